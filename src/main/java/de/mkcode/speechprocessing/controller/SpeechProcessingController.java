@@ -1,26 +1,58 @@
 package de.mkcode.speechprocessing.controller;
 
-import java.time.LocalDate;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
-import de.mkcode.speechprocessing.model.MostSecurity;
-import de.mkcode.speechprocessing.model.MostSpeeches;
+import de.mkcode.speechprocessing.evaluation.ExternalAggregation;
+import de.mkcode.speechprocessing.evaluation.PartialAggregation;
+import de.mkcode.speechprocessing.evaluation.RollupIndex;
+import de.mkcode.speechprocessing.evaluation.RowCollector;
+import de.mkcode.speechprocessing.evaluation.SpeakerStatistics;
+import de.mkcode.speechprocessing.model.AdmissionMetrics;
+import de.mkcode.speechprocessing.model.PartialResult;
+import de.mkcode.speechprocessing.model.Period;
 import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.model.SourceMetadata;
 import de.mkcode.speechprocessing.model.StatisticsRow;
+import de.mkcode.speechprocessing.service.AdmissionControl;
+import de.mkcode.speechprocessing.service.AdmissionRejectedException;
+import de.mkcode.speechprocessing.service.EvaluationCoordinator;
+import de.mkcode.speechprocessing.service.ResultCache;
+import de.mkcode.speechprocessing.service.RollupCache;
 import de.mkcode.speechprocessing.utils.CsvUtils;
+import de.mkcode.speechprocessing.utils.UrlUtils;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -28,7 +60,9 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Controller class reacting to GET REST calls for path '/evaluation'.
+ * Controller class reacting to GET REST calls for path '/evaluation'
+ * and POST REST calls for path '/evaluation/batch'.
+ * As worker of a coordinator instance, partial results are provided for path '/evaluation/partial'.
  * 
  * CSV files are loaded from given URLs and parsed.
  * Lines which 'date' or 'words' value cannot be parsed are ignored.
@@ -40,6 +74,12 @@ import lombok.extern.slf4j.Slf4j;
  *  - Which politician spoke the fewest words overall?
  * 
  * If no or no unique answer is possible for a question, this field is filled with null.
+ * Instead of 2013, the speeches can be counted between the months given by the parameters 'from' and 'to' (yyyy-MM).
+ * 
+ * Results are cached and identified by an ETag, so unchanged sources are not evaluated again.
+ * If a source cannot be read completely, the result is returned without ETag and not cached.
+ * Evaluations are admitted depending on their estimated heap memory, otherwise they are queued
+ * or rejected with 503. Evaluations with too many rows for the heap are done on disk.
  * 
  * @author Marcel König
  */
@@ -48,30 +88,253 @@ import lombok.extern.slf4j.Slf4j;
 @RequestMapping("/")
 public class SpeechProcessingController {
     
+    /** Number of rows rolled up in memory by an evaluation, before the rows are spilled to disk */
+    public static final int DEFAULT_MAX_ROWS_IN_MEMORY = 2_000_000;
+
+    private static final String PARAM_FROM = "from";
+
+    private static final String PARAM_TO = "to";
+
+    private final ResultCache resultCache;
+
+    private final RollupCache rollupCache;
+
+    private final EvaluationCoordinator evaluationCoordinator;
+
+    private final AdmissionControl admissionControl;
+
+    private final int maxRowsInMemory;
+
+    private final CsvReader csvReader;
+
+    public SpeechProcessingController() {
+        this(new AdmissionControl());
+    }
+
+    private SpeechProcessingController(AdmissionControl admissionControl) {
+        this(new ResultCache(ResultCache.DEFAULT_TTL_MILLIS, ResultCache.DEFAULT_MAX_ENTRIES),
+            new RollupCache(RollupCache.DEFAULT_TTL_MILLIS, RollupCache.DEFAULT_MAX_BYTES, admissionControl), new EvaluationCoordinator(),
+            admissionControl, DEFAULT_MAX_ROWS_IN_MEMORY);
+    }
+
+    @Autowired
+    public SpeechProcessingController(ResultCache resultCache, RollupCache rollupCache, EvaluationCoordinator evaluationCoordinator,
+                                      AdmissionControl admissionControl,
+                                      @Value("${evaluation.external.max-rows-in-memory:" + DEFAULT_MAX_ROWS_IN_MEMORY + "}") int maxRowsInMemory) {
+        this(resultCache, rollupCache, evaluationCoordinator, admissionControl, maxRowsInMemory, CsvUtils::readCsv);
+    }
+
+    SpeechProcessingController(ResultCache resultCache, RollupCache rollupCache, EvaluationCoordinator evaluationCoordinator,
+                               AdmissionControl admissionControl, int maxRowsInMemory, CsvReader csvReader) {
+        this.resultCache = resultCache;
+        this.rollupCache = rollupCache;
+        this.evaluationCoordinator = evaluationCoordinator;
+        this.admissionControl = admissionControl;
+        this.maxRowsInMemory = maxRowsInMemory;
+        this.csvReader = csvReader;
+    }
+
     /**
      * Method accepts a list of URLs.
      * Parameter must be named 'url1', 'url2' and so on (order is important).
+     * Optional parameters 'from' and 'to' (yyyy-MM, both inclusive) give the months in which speeches are counted
+     * for the question about the most speeches, a missing one leaves the period open. Default is 2013.
+     * An invalid or empty period is answered with 400.
      * Unsupported parameters are skipped.
-     * Rows from CSV file are parsed into a set of {@link StatisticsRow}.
-     * All rows are then processed and evaluated.
+     * 
+     * The response carries an ETag derived from the URLs and the versions of their sources.
+     * If it matches the 'If-None-Match' header of the request, 304 is returned
+     * without loading or evaluating any CSV file.
+     * If a source cannot be read completely, the response carries no ETag.
      * 
      * @param params Map with key-value pairs of the UrlParameters
-     * @return result of evaluation
+     * @param webRequest current request, used for the conditional request handling
+     * @return result of evaluation or null if the client's version is still valid
      */
     @Operation(summary = "Evaluate speech statistics retrieved from CSV files")
     @ApiResponses(value = { 
         @ApiResponse(responseCode = "200", description = "Statistics evaluated", 
           content = { @Content(mediaType = "application/json", 
-            schema = @Schema(implementation = ProcessingResult.class)) })}
+            schema = @Schema(implementation = ProcessingResult.class)) }),
+        @ApiResponse(responseCode = "304", description = "Statistics not modified", content = @Content),
+        @ApiResponse(responseCode = "400", description = "Invalid period", content = @Content),
+        @ApiResponse(responseCode = "503", description = "Too many evaluations, retry after the given seconds", content = @Content)}
     )
     @GetMapping("evaluation")
-    public ProcessingResult processStatistics(@Parameter(description = "list of URLs") @RequestParam Map<String, String> params) {
-        int urlCount = 1;
+    public ResponseEntity<ProcessingResult> processStatistics(@Parameter(description = "list of URLs") @RequestParam Map<String, String> params,
+                                                              WebRequest webRequest) {
+        List<String> urls = collectUrls(params);
+        Period period = collectPeriod(params);
+        Map<String, SourceMetadata> metadataByUrl = new HashMap<>();
+        String eTag = computeETag(urls, period, metadataByUrl);
+
+        if (eTag != null && webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        Set<String> unreadUrls = new HashSet<>();
+        ProcessingResult result = processStatisticsFromUrls(urls, period, eTag, metadataByUrl, unreadUrls);
+        return eTag == null || !unreadUrls.isEmpty() ? ResponseEntity.ok(result) : ResponseEntity.ok().eTag(eTag).body(result);
+    }
+
+    /**
+     * Method accepts a list of URLs.
+     * Parameter must be named 'url1', 'url2' and so on (order is important).
+     * Optional parameters 'from' and 'to' (yyyy-MM) give the months in which speeches are counted.
+     * Unsupported parameters are skipped.
+     * 
+     * @param params Map with key-value pairs of the UrlParameters
+     * @return result of evaluation
+     */
+    public ProcessingResult processStatistics(Map<String, String> params) {
+        List<String> urls = collectUrls(params);
+        Period period = collectPeriod(params);
+        Map<String, SourceMetadata> metadataByUrl = new HashMap<>();
+        return processStatisticsFromUrls(urls, period, computeETag(urls, period, metadataByUrl), metadataByUrl, new HashSet<>());
+    }
+
+    /**
+     * Method accepts a list of URL sets, each set is evaluated like a call of '/evaluation'.
+     * Every distinct URL is loaded and parsed only once, even if it is part of several sets.
+     * Duplicated lines are filtered out separately for each set.
+     * 
+     * @param urlSets list of URL sets (order of URLs within a set is kept)
+     * @return results of evaluation in the order of the given sets
+     */
+    @Operation(summary = "Evaluate speech statistics for several sets of CSV files at once")
+    @ApiResponses(value = { 
+        @ApiResponse(responseCode = "200", description = "Statistics evaluated", 
+          content = { @Content(mediaType = "application/json", 
+            array = @ArraySchema(schema = @Schema(implementation = ProcessingResult.class))) }),
+        @ApiResponse(responseCode = "503", description = "Too many evaluations, retry after the given seconds", content = @Content)}
+    )
+    @PostMapping("evaluation/batch")
+    public List<ProcessingResult> processStatisticsBatch(@Parameter(description = "list of URL sets") @RequestBody List<List<String>> urlSets) {
+        ProcessingResult[] results = new ProcessingResult[urlSets.size()];
+        String[] eTags = new String[urlSets.size()];
 
-        // Set to filter duplicates
-        Set<StatisticsRow> allRows = new HashSet<>();
+        // Answer sets from the cache, count for every remaining URL in how many sets it is needed
+        Map<String, SourceMetadata> metadataByUrl = new HashMap<>();
+        Map<String, Integer> pendingUses = new HashMap<>();
+        for (int i = 0; i < urlSets.size(); i++) {
+            List<String> urls = urlSets.get(i);
+            eTags[i] = computeETag(urls, Period.YEAR_2013, metadataByUrl);
+            results[i] = eTags[i] == null ? null : resultCache.get(eTags[i]);
+            if (results[i] == null) {
+                for (String url : new HashSet<>(urls)) {
+                    pendingUses.merge(url, 1, Integer::sum);
+                }
+            }
+        }
+
+        if (pendingUses.isEmpty()) {
+            return Arrays.asList(results);
+        }
+
+        try (AdmissionControl.Permit permit = admissionControl.admit(admissionControl.estimate(pendingUses.keySet(), metadataByUrl))) {
+            // Parsed rows of every URL, released after the last set using it is evaluated
+            Map<String, List<StatisticsRow>> rowsByUrl = new HashMap<>();
+            Set<String> unreadUrls = new HashSet<>();
+            for (int i = 0; i < urlSets.size(); i++) {
+                if (results[i] != null) {
+                    continue;
+                }
+
+                // Set to filter duplicates
+                Set<StatisticsRow> allRows = new HashSet<>();
+                for (String url : new LinkedHashSet<>(urlSets.get(i))) {
+                    allRows.addAll(rowsByUrl.computeIfAbsent(url, u -> readRows(u, metadataByUrl, unreadUrls)));
+                    if (pendingUses.merge(url, -1, Integer::sum) == 0) {
+                        rowsByUrl.remove(url);
+                    }
+                }
+
+                results[i] = processStatisticsFromStatisticsRow(allRows);
+                if (eTags[i] != null && Collections.disjoint(urlSets.get(i), unreadUrls)) {
+                    resultCache.put(eTags[i], results[i]);
+                }
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Method accepts a list of URLs like '/evaluation' and is called by a coordinator instance.
+     * Rows from CSV file are parsed into a set of {@link StatisticsRow}.
+     * The counters for each speaker and the fingerprints of all rows are returned in binary form.
+     * If a source cannot be read completely, 502 is returned, so the coordinator does not merge an incomplete partial result.
+     * 
+     * @param params Map with key-value pairs of the UrlParameters
+     * @return serialized {@link PartialResult}
+     */
+    @Operation(summary = "Evaluate speech statistics retrieved from CSV files as partial result for a coordinator")
+    @ApiResponses(value = { 
+        @ApiResponse(responseCode = "200", description = "Partial statistics evaluated", 
+          content = { @Content(mediaType = "application/octet-stream") }),
+        @ApiResponse(responseCode = "502", description = "Source could not be read", content = @Content),
+        @ApiResponse(responseCode = "503", description = "Too many evaluations, retry after the given seconds", content = @Content)}
+    )
+    @GetMapping(value = "evaluation/partial", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public byte[] processPartialStatistics(@Parameter(description = "list of URLs") @RequestParam Map<String, String> params) {
+        List<String> urls = collectUrls(params);
+        Period period = collectPeriod(params);
+        Map<String, SourceMetadata> metadataByUrl = new HashMap<>();
+
+        try (AdmissionControl.Permit permit = admissionControl.admit(admissionControl.estimate(urls, metadataByUrl))) {
+            // Set to filter duplicates
+            Set<StatisticsRow> allRows = new HashSet<>();
+            Set<String> unreadUrls = new HashSet<>();
+            for (String url : urls) {
+                allRows.addAll(readRows(url, metadataByUrl, unreadUrls));
+            }
+            if (!unreadUrls.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Sources " + unreadUrls + " could not be read");
+            }
+            return PartialAggregation.createPartial(allRows, period).toBytes();
+        }
+    }
+
+    /**
+     * Method returns the current state of the admission control:
+     * admitted and rejected evaluations, queue length and used heap budget.
+     * 
+     * @return metrics of the admission control
+     */
+    @Operation(summary = "Metrics of the admission control for evaluations")
+    @ApiResponses(value = { 
+        @ApiResponse(responseCode = "200", description = "Metrics returned", 
+          content = { @Content(mediaType = "application/json", 
+            schema = @Schema(implementation = AdmissionMetrics.class)) })}
+    )
+    @GetMapping("evaluation/metrics")
+    public AdmissionMetrics getAdmissionMetrics() {
+        return admissionControl.getMetrics();
+    }
+
+    /**
+     * Evaluations which are not admitted are answered with 503 and a 'Retry-After' header.
+     * 
+     * @param e exception of the rejected evaluation
+     * @return response with status 503
+     */
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<String> handleAdmissionRejected(AdmissionRejectedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(e.getMessage());
+    }
+
+    /**
+     * Valid URL parameters are collected in the given order.
+     * 
+     * @param params Map with key-value pairs of the UrlParameters
+     * @return list of URLs
+     */
+    private List<String> collectUrls(Map<String, String> params) {
+        int urlCount = 1;
+        List<String> urls = new ArrayList<>();
 
-        // Parsing CSV file from every given URL
         for (Map.Entry<String, String> entry : params.entrySet()) {
             String key = entry.getKey();
             String value = entry.getValue();
@@ -80,111 +343,269 @@ public class SpeechProcessingController {
             String keyValidation = "url" + urlCount;
             if(key.startsWith("url") && key.length() > 3 && key.substring(3).matches("^[0-9]+$")) {
                 if (keyValidation.equals(key)) {
-                    allRows.addAll(CsvUtils.readCsvFromUrl(value));
+                    urls.add(value);
                     urlCount++;
                 } else {
                     log.warn("parameters seem not to be correctly ordered", key);
                 }
-            } else {
+            } else if (!PARAM_FROM.equals(key) && !PARAM_TO.equals(key)) {
                 log.warn("parameter '{}' is not supported", key);
             }
         }
 
-        return processStatisticsFromStatisticsRow(allRows);
+        return urls;
     }
 
     /**
-     * Each row from CSV file is processed and evaluated.
-     * Speeches in 2013, speeches about 'internal security' and words are counted for each speaker.
+     * The period is collected from the parameters 'from' and 'to'.
+     * If neither is given, speeches are counted in 2013.
      * 
-     * For every question it is evaluated if there is a unique result.
-     * This result is added to {@link ProcessingResult}, otherwise it is null.
+     * @param params Map with key-value pairs of the UrlParameters
+     * @return months in which speeches are counted
+     * @throws ResponseStatusException with 400 if a value cannot be parsed or the period is empty
+     */
+    private Period collectPeriod(Map<String, String> params) {
+        String from = params.get(PARAM_FROM);
+        String to = params.get(PARAM_TO);
+        if (from == null && to == null) {
+            return Period.YEAR_2013;
+        }
+
+        Period period;
+        try {
+            period = new Period(from == null ? Period.OPEN_FROM : YearMonth.parse(from, Period.MONTH_FORMAT),
+                to == null ? Period.OPEN_TO : YearMonth.parse(to, Period.MONTH_FORMAT));
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Period from '" + from + "' to '" + to + "' cannot be parsed (yyyy-MM)");
+        }
+        if (period.getFrom().isAfter(period.getTo())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Period from '" + from + "' to '" + to + "' is empty");
+        }
+        return period;
+    }
+
+    /**
+     * The key of the sources is built from the URLs and the validators (ETag, modification time) of their sources.
+     * If any source provides no validator, the sources cannot be identified and null is returned.
+     * Metadata of the sources is looked up in the given map first and added to it when retrieved.
      * 
-     * @param rows collected rows from the given CSV files
-     * @return result of evaluation
+     * @param urls list of URLs
+     * @param metadataByUrl already retrieved metadata of sources
+     * @return key of the sources or null
      */
-    private ProcessingResult processStatisticsFromStatisticsRow(Set<StatisticsRow> rows) {
-        
-        MostSpeeches mostSpeeches = null;
-        MostSecurity mostSecurity = null;
-
-        Map<String, Integer> speechesCount = new HashMap<>();
-        Map<String, Integer> securityCount = new HashMap<>();
-        Map<String, Integer> wordsCount = new HashMap<>();
-
-        for (StatisticsRow row : rows) {
-            String speaker = row.getSpeaker();
-            String topic = row.getTopic();
-            LocalDate date = row.getDate();
-            int words = row.getWords();
-
-            // Count speeches from 2013 for the rows speaker.
-            // If its the first occurence a new map entry is generated otherwise the current entry is updated
-            // At the same time it is checked whether it is a new highest value (mostSpeeches)
-            if (date.getYear() == 2013) {
-                Integer speechesCountOfSpeaker = speechesCount.get(speaker);
-                if(speechesCountOfSpeaker == null) {
-                    speechesCountOfSpeaker = 0;
-                }
-                speechesCountOfSpeaker++;
-                speechesCount.put(speaker, speechesCountOfSpeaker);
+    private String computeSourcesKey(List<String> urls, Map<String, SourceMetadata> metadataByUrl) {
+        StringBuilder key = new StringBuilder();
+        for (String url : urls) {
+            SourceMetadata metadata = metadataByUrl.computeIfAbsent(url, UrlUtils::readMetadata);
+            if (metadata == null || metadata.getValidator() == null) {
+                return null;
+            }
+            key.append(url).append('\n').append(metadata.getValidator()).append('\n');
+        }
+        return DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8));
+    }
 
-                if(mostSpeeches == null || speechesCountOfSpeaker > mostSpeeches.getCount()) {
-                    mostSpeeches = new MostSpeeches(speaker, speechesCountOfSpeaker);
-                } else if (speechesCountOfSpeaker == mostSpeeches.getCount()) {
-                    mostSpeeches.setSpeaker(null);
-                }
+    /**
+     * The ETag is computed from the key of the sources and a period other than 2013.
+     * If any source provides no validator, the result cannot be identified and null is returned.
+     * 
+     * @param urls list of URLs
+     * @param period months in which speeches are counted
+     * @param metadataByUrl already retrieved metadata of sources
+     * @return strong ETag or null
+     */
+    private String computeETag(List<String> urls, Period period, Map<String, SourceMetadata> metadataByUrl) {
+        String sourcesKey = computeSourcesKey(urls, metadataByUrl);
+        if (sourcesKey == null) {
+            return null;
+        }
+        if (Period.YEAR_2013.equals(period)) {
+            return "\"" + sourcesKey + "\"";
+        }
+        String key = sourcesKey + '\n' + period.getFrom() + '\n' + period.getTo();
+        return "\"" + DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Rows from CSV file are parsed and rolled up by month while parsing.
+     * The result for the period is then evaluated from the rolled up counters.
+     * If workers are configured, the CSV files are evaluated by the workers instead.
+     * If a result for the same sources and period is cached, it is returned without parsing.
+     * The rollup of the sources is cached as well, so other periods over the same sources are evaluated without parsing.
+     * If only the first URLs were rolled up before, their rollup is extended by the remaining sources.
+     * Local evaluations wait for admission, so the heap is not exhausted by concurrent evaluations.
+     * If the rows exceed the configured number of rows in memory, they are evaluated on disk.
+     * 
+     * @param urls list of URLs
+     * @param period months in which speeches are counted
+     * @param eTag key of the result in the cache, null if the result cannot be cached
+     * @param metadataByUrl already retrieved metadata of sources
+     * @param unreadUrls set to which URLs are added whose source cannot be read completely
+     * @return result of evaluation, not cached if a source cannot be read completely
+     */
+    private ProcessingResult processStatisticsFromUrls(List<String> urls, Period period, String eTag, Map<String, SourceMetadata> metadataByUrl,
+                                                       Set<String> unreadUrls) {
+        if (eTag != null) {
+            ProcessingResult cachedResult = resultCache.get(eTag);
+            if (cachedResult != null) {
+                return cachedResult;
             }
+        }
 
-            // Count speeches about 'internal security' for the rows speaker.
-            // If its the first occurence a new map entry is generated otherwise the current entry is updated
-            // At the same time it is checked whether it is a new highest value (mostSecurity)
-            if (topic.equalsIgnoreCase("internal security")) {
-                Integer securityCountOfSpeaker = securityCount.get(speaker);
-                if(securityCountOfSpeaker == null) {
-                    securityCountOfSpeaker = 0;
-                }
-                securityCountOfSpeaker++;
-                securityCount.put(speaker, securityCountOfSpeaker);
+        ProcessingResult result;
+        if (evaluationCoordinator.isEnabled()) {
+            // Distribute the CSV files to the workers
+            result = evaluationCoordinator.evaluate(urls, period, metadataByUrl, unreadUrls);
+        } else {
+            result = processStatisticsFromRollup(urls, period, metadataByUrl, unreadUrls);
+        }
 
-                if(mostSecurity == null || securityCountOfSpeaker > mostSecurity.getCount()) {
-                    mostSecurity = new MostSecurity(speaker, securityCountOfSpeaker);
-                } else if (securityCountOfSpeaker == mostSecurity.getCount()) {
-                    mostSecurity.setSpeaker(null);
-                }
+        if (eTag != null && unreadUrls.isEmpty()) {
+            resultCache.put(eTag, result);
+        }
+        return result;
+    }
+
+    /**
+     * The result is evaluated from the cached rollup of the sources, if there is one.
+     * Otherwise the longest cached rollup of the first URLs is extended by the remaining sources
+     * (or a new rollup is built) and cached if all rows fit into memory.
+     * The rollup is cached after the memory of the evaluation is released, as the cache reserves it from the same budget.
+     * 
+     * @param urls list of URLs
+     * @param period months in which speeches are counted
+     * @param metadataByUrl already retrieved metadata of sources
+     * @param unreadUrls set to which URLs are added whose source cannot be read completely
+     * @return result of evaluation
+     */
+    private ProcessingResult processStatisticsFromRollup(List<String> urls, Period period, Map<String, SourceMetadata> metadataByUrl,
+                                                         Set<String> unreadUrls) {
+        String sourcesKey = computeSourcesKey(urls, metadataByUrl);
+        try (RollupIndex cachedIndex = sourcesKey == null ? null : rollupCache.get(sourcesKey)) {
+            if (cachedIndex != null) {
+                return cachedIndex.evaluate(period);
             }
+        }
 
-            // Count words for the rows speaker.
-            // If its the first occurence a new map entry is generated otherwise the current entry is updated
-            if(words > 0) {
-                Integer wordsCountOfSpeaker = wordsCount.get(speaker);
-                if(wordsCountOfSpeaker == null) {
-                    wordsCountOfSpeaker = 0;
-                }
-                wordsCountOfSpeaker += words;
-                wordsCount.put(speaker, wordsCountOfSpeaker);
+        RollupIndex baseIndex = null;
+        int loadedUrls = 0;
+        for (int i = urls.size() - 1; sourcesKey != null && i > 0 && baseIndex == null; i--) {
+            baseIndex = rollupCache.get(computeSourcesKey(urls.subList(0, i), metadataByUrl));
+            loadedUrls = baseIndex == null ? 0 : i;
+        }
+        List<String> newUrls = urls.subList(loadedUrls, urls.size());
+
+        RollupIndex cacheableIndex = null;
+        ProcessingResult result;
+        try (RollupIndex base = baseIndex;
+             AdmissionControl.Permit permit = admissionControl.admit(estimateCollectedRows(newUrls, metadataByUrl, base));
+             RowCollector allRows = new RowCollector(maxRowsInMemory, ExternalAggregation.DEFAULT_PARTITIONS,
+                 base == null ? new RollupIndex() : base.copy())) {
+            // Parsing CSV file from every given URL
+            // Duplicates are filtered, too many rows are spilled to disk
+            for (String url : newUrls) {
+                readSource(url, allRows, metadataByUrl, unreadUrls);
+            }
+
+            result = allRows.evaluate(period);
+            if (sourcesKey != null && !allRows.isExternal() && unreadUrls.isEmpty()) {
+                cacheableIndex = allRows.getRollupIndex().retain();
+            }
+        }
+
+        if (cacheableIndex != null) {
+            try (RollupIndex index = cacheableIndex) {
+                rollupCache.put(sourcesKey, index);
             }
         }
+        return result;
+    }
 
-        // Sort the entries of the wordsCount map by its value (words)
-        List<Entry<String, Integer>> sortedWordsCount = wordsCount.entrySet().stream().sorted(Entry.comparingByValue()).collect(Collectors.toList());
-        
-        // Find first unique entry
-        // If no unique entry can be found, the result is null
-        Entry<String, Integer> firstLeastWordy = null;
-        Entry<String, Integer> secondLeastWordy = null;
-        if (sortedWordsCount != null && !sortedWordsCount.isEmpty()) {
-            firstLeastWordy = sortedWordsCount.get(0);
-            secondLeastWordy = sortedWordsCount.get(1);
+    /**
+     * The memory of collecting the rows of the CSV files is estimated:
+     * the copy of the base rollup and the rollup of the new rows.
+     * Rows beyond the configured number of rows in memory are spilled to disk,
+     * so at most their rollup, the rows of one partition and the buffers of the partitions are held in memory.
+     * 
+     * @param urls list of URLs
+     * @param metadataByUrl already retrieved metadata of sources
+     * @param baseIndex rollup which is copied and extended, may be null
+     * @return estimated memory in bytes
+     */
+    private long estimateCollectedRows(List<String> urls, Map<String, SourceMetadata> metadataByUrl, RollupIndex baseIndex) {
+        long maxBytes = maxRowsInMemory * (AdmissionControl.HEAP_BYTES_PER_ROW + AdmissionControl.ROLLUP_BYTES_PER_ROW)
+            + ExternalAggregation.bufferBytes(ExternalAggregation.DEFAULT_PARTITIONS);
+        long baseBytes = baseIndex == null ? 0 : baseIndex.getMemoryBytes();
+        return Math.min(admissionControl.estimateRollup(urls, metadataByUrl) + baseBytes, maxBytes);
+    }
 
-            if (firstLeastWordy.getValue().equals(secondLeastWordy.getValue())) {
-                firstLeastWordy = null;
+    /**
+     * Rows from CSV file are parsed.
+     * 
+     * @param url URL of the CSV file
+     * @param metadataByUrl already retrieved metadata of sources
+     * @param unreadUrls set to which the URL is added if its source cannot be read completely
+     * @return parsed rows
+     */
+    private List<StatisticsRow> readRows(String url, Map<String, SourceMetadata> metadataByUrl, Set<String> unreadUrls) {
+        List<StatisticsRow> rows = new ArrayList<>();
+        readSource(url, rows::add, metadataByUrl, unreadUrls);
+        return rows;
+    }
+
+    /**
+     * Rows from CSV file are parsed and passed to the consumer.
+     * The size of the file per row is recorded for the estimates of the admission control.
+     * If the file cannot be read completely, the rows read so far are kept, but the URL is recorded,
+     * so the result is neither cached nor identified by an ETag.
+     * 
+     * @param url URL of the CSV file
+     * @param consumer consumer of the parsed rows
+     * @param metadataByUrl already retrieved metadata of sources
+     * @param unreadUrls set to which the URL is added if its source cannot be read completely
+     */
+    private void readSource(String url, Consumer<StatisticsRow> consumer, Map<String, SourceMetadata> metadataByUrl, Set<String> unreadUrls) {
+        try {
+            int rowCount = csvReader.read(url, consumer);
+            admissionControl.recordSource(metadataByUrl.get(url), rowCount);
+        } catch (IOException e) {
+            log.error("Error reading file from URL '{}', the result is not cached", url);
+            unreadUrls.add(url);
+        }
+    }
+
+    /**
+     * Each row from CSV file is processed and evaluated.
+     * Speeches in 2013, speeches about 'internal security' and words are counted for each speaker.
+     * 
+     * For every question it is evaluated if there is a unique result.
+     * This result is added to {@link ProcessingResult}, otherwise it is null.
+     * 
+     * @param rows collected rows from the given CSV files
+     * @return result of evaluation
+     */
+    private ProcessingResult processStatisticsFromStatisticsRow(Set<StatisticsRow> rows) {
+        // Counters are freed as soon as the result is evaluated
+        try (SpeakerStatistics statistics = new SpeakerStatistics()) {
+            for (StatisticsRow row : rows) {
+                statistics.add(row);
             }
+            return statistics.evaluate();
         }
-        
-        return new ProcessingResult(
-            mostSpeeches == null ? null : mostSpeeches.getSpeaker(),
-            mostSecurity == null ? null : mostSecurity.getSpeaker(),
-            firstLeastWordy == null ? null : firstLeastWordy.getKey());
+    }
+
+    /**
+     * Reads the rows of a CSV file.
+     */
+    @FunctionalInterface
+    interface CsvReader {
+
+        /**
+         * @param url URL of the CSV file
+         * @param consumer consumer of every correct row from CSV file
+         * @return number of rows passed to the consumer
+         * @throws IOException if the file cannot be read completely
+         */
+        int read(String url, Consumer<StatisticsRow> consumer) throws IOException;
     }
 }
@@ -0,0 +1,62 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Direct buffers outside of the Java heap, which are freed explicitly instead of by the garbage collector.
+ */
+@Slf4j
+final class DirectBuffers {
+
+    private static final Object UNSAFE;
+
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            log.warn("Direct buffers cannot be freed explicitly, they are freed by the garbage collector");
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private DirectBuffers() {
+    }
+
+    /**
+     * @param buffer direct buffer
+     * @return new direct buffer with the same capacity and content
+     */
+    static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(buffer.capacity());
+        copy.put(buffer.duplicate().clear());
+        return copy;
+    }
+
+    /**
+     * The memory of the buffer is freed, it must not be used afterwards.
+     *
+     * @param buffer direct buffer
+     */
+    static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (Exception e) {
+                log.warn("Direct buffer could not be freed explicitly");
+            }
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import de.mkcode.speechprocessing.model.Period;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.model.StatisticsRow;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Evaluation of rows which do not fit into the heap together.
+ *
+ * Rows are hash partitioned by speaker into temporary files, written sequentially through a buffer per partition.
+ * Partitions are then evaluated one by one: duplicated rows are filtered out
+ * (they always belong to the same partition) and the rows are counted for their speakers.
+ * As every speaker is complete within its partition, the leading speakers are found in one final pass
+ * over all partitions with the usual uniqueness rules.
+ *
+ * At most the given number of rows is held in memory at once.
+ * A partition with more rows is split again by the hash of the whole row for filtering duplicates,
+ * while the counters of its speakers are kept together outside of the heap.
+ *
+ * Write buffers are released as soon as a file is complete, so besides the rows in memory
+ * only the buffers of one set of partitions and one read buffer are held at once, see {@link #bufferBytes(int)}.
+ */
+@Slf4j
+public class ExternalAggregation implements AutoCloseable {
+
+    public static final int DEFAULT_PARTITIONS = 64;
+
+    /** Depth after which a partition is evaluated in memory, even if it has more rows (e.g. all rows equal) */
+    private static final int MAX_DEPTH = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int maxRowsInMemory;
+
+    private final int partitionCount;
+
+    private final Path directory;
+
+    private final SpillFile[] partitions;
+
+    private int peakRowsInMemory;
+
+    /**
+     * @param maxRowsInMemory maximum number of rows held in memory at once
+     * @param partitionCount number of partitions rows are split into
+     */
+    public ExternalAggregation(int maxRowsInMemory, int partitionCount) {
+        this.maxRowsInMemory = maxRowsInMemory;
+        this.partitionCount = partitionCount;
+        try {
+            this.directory = Files.createTempDirectory("speechprocessing");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.partitions = new SpillFile[partitionCount];
+        log.info("Evaluating rows externally in '{}'", directory);
+    }
+
+    /**
+     * The row is written to the partition of its speaker.
+     *
+     * @param row row from CSV file
+     */
+    public void add(StatisticsRow row) {
+        int partition = partitionOf(row.getSpeaker().hashCode(), 0);
+        if (partitions[partition] == null) {
+            partitions[partition] = new SpillFile(directory.resolve("partition-" + partition));
+        }
+        partitions[partition].write(row);
+    }
+
+    /**
+     * While rows are added, every partition holds a write buffer.
+     * While evaluating, one partition is read and possibly split into sub partitions with a write buffer each,
+     * which are complete before the first of them is read.
+     *
+     * @param partitionCount number of partitions rows are split into
+     * @return heap memory of the buffers held at once
+     */
+    public static long bufferBytes(int partitionCount) {
+        return (long) (partitionCount + 1) * BUFFER_SIZE;
+    }
+
+    private int partitionOf(int hash, int depth) {
+        // mix the hash with the depth, so rows of one partition are spread on the next depth
+        int h = (hash ^ (depth * 0x9e3779b9)) * 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, partitionCount);
+    }
+
+    /**
+     * The partitions are evaluated one by one for speeches in 2013.
+     *
+     * @return result of evaluation
+     */
+    public ProcessingResult evaluate() {
+        return evaluate(Period.YEAR_2013, null);
+    }
+
+    /**
+     * The partitions are evaluated one by one.
+     * The distinct rows of a partition are counted for their speakers while they are read,
+     * speeches are counted in the given period.
+     * Rows which were collected in memory before spilling are added from their rollup,
+     * each speaker to the counters of its partition.
+     *
+     * @param period months in which speeches are counted for the question about the most speeches
+     * @param collected rollup of the rows collected before spilling (none of them is spilled), may be null
+     * @return result of evaluation
+     */
+    public ProcessingResult evaluate(Period period, RollupIndex collected) {
+        for (SpillFile partition : partitions) {
+            if (partition != null) {
+                partition.finishWriting();
+            }
+        }
+
+        SpeakerLeaders leaders = new SpeakerLeaders();
+
+        for (int i = 0; i < partitionCount; i++) {
+            SpillFile partition = partitions[i];
+            if (partition == null && collected == null) {
+                continue;
+            }
+            // Counters are freed as soon as the speakers of the partition are offered
+            try (SpeakerStatistics statistics = new SpeakerStatistics()) {
+                if (partition != null) {
+                    addDistinctRows(partition, 1, row -> statistics.add(row, period));
+                }
+                if (collected != null) {
+                    int index = i;
+                    collected.addTo(statistics, period, nameHashCode -> partitionOf(nameHashCode, 0) == index);
+                }
+                statistics.offerTo(leaders);
+            }
+        }
+
+        return leaders.toResult();
+    }
+
+    /**
+     * The distinct rows of the file are passed to the consumer.
+     * If the file has more rows than may be held in memory, it is split by the hash of the whole row,
+     * so equal rows end up in the same sub partition.
+     *
+     * @param file file with rows
+     * @param depth depth of partitioning for the next split
+     * @param consumer consumer of the distinct rows
+     */
+    private void addDistinctRows(SpillFile file, int depth, Consumer<StatisticsRow> consumer) {
+        if (file.getRowCount() <= maxRowsInMemory || depth > MAX_DEPTH) {
+            // Set to filter duplicates
+            Set<StatisticsRow> rows = new HashSet<>();
+            file.read(rows::add);
+            peakRowsInMemory = Math.max(peakRowsInMemory, rows.size());
+            rows.forEach(consumer);
+            file.delete();
+            return;
+        }
+
+        SpillFile[] subPartitions = split(file, depth);
+        for (SpillFile subPartition : subPartitions) {
+            if (subPartition != null) {
+                addDistinctRows(subPartition, depth + 1, consumer);
+            }
+        }
+    }
+
+    private SpillFile[] split(SpillFile file, int depth) {
+        SpillFile[] subPartitions = new SpillFile[partitionCount];
+        file.read(row -> {
+            int partition = partitionOf(row.hashCode(), depth);
+            if (subPartitions[partition] == null) {
+                subPartitions[partition] = new SpillFile(file.getPath().resolveSibling(file.getPath().getFileName() + "-" + partition));
+            }
+            subPartitions[partition].write(row);
+        });
+        file.delete();
+        for (SpillFile subPartition : subPartitions) {
+            if (subPartition != null) {
+                subPartition.finishWriting();
+            }
+        }
+        return subPartitions;
+    }
+
+    /**
+     * @return highest number of rows held in memory at once while evaluating
+     */
+    public int getPeakRowsInMemory() {
+        return peakRowsInMemory;
+    }
+
+    /**
+     * All temporary files are deleted.
+     */
+    @Override
+    public void close() {
+        for (SpillFile partition : partitions) {
+            if (partition != null) {
+                partition.delete();
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            log.warn("Temporary files in '{}' could not be deleted", directory);
+        }
+    }
+
+    /**
+     * Temporary file with rows in binary form.
+     * Rows are collected in a buffer and written sequentially when it is full.
+     * The buffer is only held while the file is written or read.
+     */
+    private static class SpillFile {
+
+        private final Path path;
+
+        private FileChannel channel;
+
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private int rowCount;
+
+        private SpillFile(Path path) {
+            this.path = path;
+            try {
+                this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Path getPath() {
+            return path;
+        }
+
+        private int getRowCount() {
+            return rowCount;
+        }
+
+        private void write(StatisticsRow row) {
+            byte[] speaker = row.getSpeaker().getBytes(StandardCharsets.UTF_8);
+            byte[] topic = row.getTopic().getBytes(StandardCharsets.UTF_8);
+            int size = 4 + speaker.length + 4 + topic.length + 8 + 4;
+            if (buffer.remaining() < size) {
+                flush();
+                if (buffer.capacity() < size) {
+                    buffer = ByteBuffer.allocate(size);
+                }
+            }
+            buffer.putInt(speaker.length).put(speaker);
+            buffer.putInt(topic.length).put(topic);
+            buffer.putLong(row.getDate().toEpochDay());
+            buffer.putInt(row.getWords());
+            rowCount++;
+        }
+
+        private void flush() {
+            try {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * The remaining rows are written, the file is closed for writing and its buffer is released.
+         */
+        private void finishWriting() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                flush();
+                channel.close();
+                channel = null;
+                buffer = null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * The file is closed for writing and all rows are read sequentially through a buffer,
+         * which is released afterwards.
+         *
+         * @param consumer consumer of every row
+         */
+        private void read(Consumer<StatisticsRow> consumer) {
+            finishWriting();
+            try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                // empty buffer in read mode
+                buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+                for (int i = 0; i < rowCount; i++) {
+                    // the buffer is refilled until it holds the complete next row
+                    while (!hasCompleteRow()) {
+                        buffer.compact();
+                        if (!buffer.hasRemaining()) {
+                            buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                        }
+                        if (readChannel.read(buffer) < 0) {
+                            throw new IOException("Unexpected end of file '" + path + "'");
+                        }
+                        buffer.flip();
+                    }
+                    consumer.accept(readRow());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                buffer = null;
+            }
+        }
+
+        private boolean hasCompleteRow() {
+            if (buffer.remaining() < 4) {
+                return false;
+            }
+            int position = buffer.position();
+            int speakerLength = buffer.getInt(position);
+            if (buffer.remaining() < 4 + speakerLength + 4) {
+                return false;
+            }
+            int topicLength = buffer.getInt(position + 4 + speakerLength);
+            return buffer.remaining() >= 4 + speakerLength + 4 + topicLength + 8 + 4;
+        }
+
+        private StatisticsRow readRow() {
+            byte[] speaker = new byte[buffer.getInt()];
+            buffer.get(speaker);
+            byte[] topic = new byte[buffer.getInt()];
+            buffer.get(topic);
+            LocalDate date = LocalDate.ofEpochDay(buffer.getLong());
+            int words = buffer.getInt();
+            return new StatisticsRow(new String(speaker, StandardCharsets.UTF_8), new String(topic, StandardCharsets.UTF_8), date, words);
+        }
+
+        private void delete() {
+            buffer = null;
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Temporary file '{}' could not be deleted", path);
+            }
+        }
+    }
+}
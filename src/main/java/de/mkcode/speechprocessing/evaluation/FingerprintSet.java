@@ -0,0 +1,96 @@
+package de.mkcode.speechprocessing.evaluation;
+
+/**
+ * Set of 64 bit row fingerprints in a primitive array with open addressing.
+ *
+ * No object is allocated per fingerprint, the array is doubled when it is half full.
+ * The value 0 marks a free slot, so the fingerprint 0 is stored as 1.
+ */
+public class FingerprintSet {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] slots = new long[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * @param fingerprint fingerprint of a row
+     * @return true if the fingerprint was not contained yet
+     */
+    public boolean add(long fingerprint) {
+        long value = fingerprint == 0 ? 1 : fingerprint;
+        int mask = slots.length - 1;
+        for (int slot = slotOf(value, mask); ; slot = (slot + 1) & mask) {
+            if (slots[slot] == value) {
+                return false;
+            }
+            if (slots[slot] == 0) {
+                slots[slot] = value;
+                size++;
+                if (size > slots.length / 2) {
+                    grow();
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param fingerprint fingerprint of a row
+     * @return true if the fingerprint is contained
+     */
+    public boolean contains(long fingerprint) {
+        long value = fingerprint == 0 ? 1 : fingerprint;
+        int mask = slots.length - 1;
+        for (int slot = slotOf(value, mask); slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (slots[slot] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of contained fingerprints
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return heap memory of the slots in bytes
+     */
+    public long getMemoryBytes() {
+        return (long) slots.length * Long.BYTES;
+    }
+
+    /**
+     * @return independent set with the same fingerprints
+     */
+    public FingerprintSet copy() {
+        FingerprintSet copy = new FingerprintSet();
+        copy.slots = slots.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    private static int slotOf(long value, int mask) {
+        return (int) (value ^ (value >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldSlots = slots;
+        slots = new long[oldSlots.length * 2];
+        int mask = slots.length - 1;
+        for (long value : oldSlots) {
+            if (value != 0) {
+                int slot = slotOf(value, mask);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hash table with composite keys and a count and a sum per key, stored outside of the Java heap.
+ *
+ * A key consists of two ints, a long and an int, e.g. the ids of speaker and topic, a month and 0,
+ * or the ids of speaker and topic, the day and the words of a row.
+ * Keys are compared completely, there are no false positives.
+ * Like in {@link SpeakerTable}, slots are stored in a direct {@link ByteBuffer} and found by open addressing (linear probing),
+ * no objects are created per key and the memory is freed when the table is closed.
+ */
+class KeyTable implements AutoCloseable {
+
+    private static final int SLOT_SIZE = 32;
+
+    /** First key + 1 (must not be negative), 0 marks an empty slot */
+    private static final int KEY1 = 0;
+
+    private static final int KEY2 = 4;
+
+    private static final int KEY3 = 8;
+
+    private static final int KEY4 = 16;
+
+    private static final int COUNT = 20;
+
+    private static final int SUM = 24;
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / SLOT_SIZE;
+
+    private ByteBuffer slots;
+
+    private int capacity;
+
+    private int size;
+
+    /**
+     * @param expectedKeys number of keys the table is sized for, it grows if needed
+     */
+    KeyTable(int expectedKeys) {
+        capacity = Integer.highestOneBit(Math.max(16, expectedKeys * 4 / 3) - 1) << 1;
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+    }
+
+    private KeyTable(KeyTable table) {
+        capacity = table.capacity;
+        size = table.size;
+        slots = DirectBuffers.copy(table.slots);
+    }
+
+    /**
+     * The given values are added to the count and sum of the key.
+     * If its the first occurence of the key a new slot is used.
+     *
+     * @param key1 first part of the key (not negative)
+     * @param key2 second part of the key
+     * @param key3 third part of the key
+     * @param key4 fourth part of the key
+     * @param count value added to the count
+     * @param sum value added to the sum
+     * @return true if the key was not contained yet
+     */
+    boolean add(int key1, int key2, long key3, int key4, int count, long sum) {
+        int hash = hash(key1, key2, key3, key4);
+        int mask = capacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int base = slot * SLOT_SIZE;
+            if (slots.getInt(base + KEY1) == 0) {
+                if (size + 1 > capacity * 3 / 4) {
+                    grow();
+                    return add(key1, key2, key3, key4, count, sum);
+                }
+                slots.putInt(base + KEY1, key1 + 1);
+                slots.putInt(base + KEY2, key2);
+                slots.putLong(base + KEY3, key3);
+                slots.putInt(base + KEY4, key4);
+                slots.putInt(base + COUNT, count);
+                slots.putLong(base + SUM, sum);
+                size++;
+                return true;
+            }
+            if (keyEquals(base, key1, key2, key3, key4)) {
+                slots.putInt(base + COUNT, slots.getInt(base + COUNT) + count);
+                slots.putLong(base + SUM, slots.getLong(base + SUM) + sum);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return index of the slot of the key, -1 if the key is not in the table
+     */
+    int find(int key1, int key2, long key3, int key4) {
+        int mask = capacity - 1;
+        for (int slot = hash(key1, key2, key3, key4) & mask; ; slot = (slot + 1) & mask) {
+            int base = slot * SLOT_SIZE;
+            if (slots.getInt(base + KEY1) == 0) {
+                return -1;
+            }
+            if (keyEquals(base, key1, key2, key3, key4)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean keyEquals(int base, int key1, int key2, long key3, int key4) {
+        return slots.getInt(base + KEY1) == key1 + 1 && slots.getInt(base + KEY2) == key2
+            && slots.getLong(base + KEY3) == key3 && slots.getInt(base + KEY4) == key4;
+    }
+
+    private static int hash(int key1, int key2, long key3, int key4) {
+        int hash = key1 * 0x9e3779b9 + key2;
+        hash = hash * 0x9e3779b9 + (int) (key3 ^ (key3 >>> 32));
+        hash = hash * 0x9e3779b9 + key4;
+        hash *= 0x85ebca6b;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The number of slots is doubled and all used slots are moved to their new position.
+     */
+    private void grow() {
+        if (capacity > MAX_CAPACITY / 2) {
+            throw new IllegalStateException("Too many keys for table");
+        }
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = capacity;
+
+        capacity *= 2;
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            int oldBase = oldSlot * SLOT_SIZE;
+            if (oldSlots.getInt(oldBase + KEY1) != 0) {
+                int slot = hash(oldSlots.getInt(oldBase + KEY1) - 1, oldSlots.getInt(oldBase + KEY2),
+                    oldSlots.getLong(oldBase + KEY3), oldSlots.getInt(oldBase + KEY4)) & mask;
+                while (slots.getInt(slot * SLOT_SIZE + KEY1) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                for (int field = 0; field < SLOT_SIZE; field += 4) {
+                    slots.putInt(slot * SLOT_SIZE + field, oldSlots.getInt(oldBase + field));
+                }
+            }
+        }
+        DirectBuffers.free(oldSlots);
+    }
+
+    /**
+     * @return number of keys in the table
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of slots, valid slot indices are 0 to capacity - 1
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @param slot index of the slot
+     * @return true if the slot holds a key
+     */
+    boolean isUsed(int slot) {
+        return slots.getInt(slot * SLOT_SIZE + KEY1) != 0;
+    }
+
+    int key1(int slot) {
+        return slots.getInt(slot * SLOT_SIZE + KEY1) - 1;
+    }
+
+    int key2(int slot) {
+        return slots.getInt(slot * SLOT_SIZE + KEY2);
+    }
+
+    long key3(int slot) {
+        return slots.getLong(slot * SLOT_SIZE + KEY3);
+    }
+
+    int count(int slot) {
+        return slots.getInt(slot * SLOT_SIZE + COUNT);
+    }
+
+    long sum(int slot) {
+        return slots.getLong(slot * SLOT_SIZE + SUM);
+    }
+
+    /**
+     * @return memory of the table outside of the Java heap in bytes
+     */
+    long getMemoryBytes() {
+        return slots.capacity();
+    }
+
+    /**
+     * @return independent copy of the table
+     */
+    KeyTable copy() {
+        return new KeyTable(this);
+    }
+
+    /**
+     * The memory of the table is freed, it must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (slots != null) {
+            DirectBuffers.free(slots);
+            slots = null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.mkcode.speechprocessing.model.PartialResult;
+import de.mkcode.speechprocessing.model.Period;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.model.StatisticsRow;
+
+/**
+ * Creates {@link PartialResult}s from rows and merges them into the final {@link ProcessingResult}.
+ *
+ * Counters of all partial results are summed up.
+ * A row whose fingerprint was already merged from another partial result is taken back from the counters,
+ * so duplicated lines across CSV files evaluated on different instances are filtered out.
+ * The counters are freed when the aggregation is closed.
+ */
+public class PartialAggregation implements AutoCloseable {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final SpeakerStatistics statistics = new SpeakerStatistics();
+
+    private final FingerprintSet fingerprints = new FingerprintSet();
+
+    /**
+     * Each row is counted for its speaker and its fingerprint is recorded.
+     *
+     * @param rows distinct rows from the CSV files
+     * @return partial result of the rows
+     */
+    public static PartialResult createPartial(Collection<StatisticsRow> rows) {
+        return createPartial(rows, Period.YEAR_2013);
+    }
+
+    /**
+     * Each row is counted for its speaker and its fingerprint is recorded.
+     * Speeches are counted in the given period.
+     *
+     * @param rows distinct rows from the CSV files
+     * @param period months in which speeches are counted for the question about the most speeches
+     * @return partial result of the rows
+     */
+    public static PartialResult createPartial(Collection<StatisticsRow> rows, Period period) {
+        Map<String, Integer> speakerIndex = new LinkedHashMap<>();
+        int[] speechesCount = new int[rows.size()];
+        int[] securityCount = new int[rows.size()];
+        long[] wordsCount = new long[rows.size()];
+
+        long[] fingerprints = new long[rows.size()];
+        int[] rowSpeakers = new int[rows.size()];
+        byte[] rowFlags = new byte[rows.size()];
+        int[] rowWords = new int[rows.size()];
+
+        int i = 0;
+        for (StatisticsRow row : rows) {
+            int speaker = speakerIndex.computeIfAbsent(row.getSpeaker(), s -> speakerIndex.size());
+            byte flags = 0;
+            if (SpeakerStatistics.isSpeechIn(row, period)) {
+                flags |= PartialResult.FLAG_SPEECH;
+                speechesCount[speaker]++;
+            }
+            if (SpeakerStatistics.isSecuritySpeech(row)) {
+                flags |= PartialResult.FLAG_SECURITY;
+                securityCount[speaker]++;
+            }
+            wordsCount[speaker] += SpeakerStatistics.countedWords(row);
+
+            fingerprints[i] = fingerprint(row);
+            rowSpeakers[i] = speaker;
+            rowFlags[i] = flags;
+            rowWords[i] = SpeakerStatistics.countedWords(row);
+            i++;
+        }
+
+        int speakerCount = speakerIndex.size();
+        return new PartialResult(speakerIndex.keySet().toArray(new String[speakerCount]),
+            Arrays.copyOf(speechesCount, speakerCount),
+            Arrays.copyOf(securityCount, speakerCount),
+            Arrays.copyOf(wordsCount, speakerCount),
+            fingerprints, rowSpeakers, rowFlags, rowWords);
+    }
+
+    /**
+     * 64 bit FNV-1a hash over all values of the row.
+     *
+     * @param row row from CSV file
+     * @return fingerprint of the row
+     */
+    static long fingerprint(StatisticsRow row) {
+        String value = row.getSpeaker() + '\u0000' + row.getTopic() + '\u0000' + row.getDate() + '\u0000' + row.getWords();
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * The counters of the partial result are added.
+     * Rows which were already merged from another partial result are taken back.
+     *
+     * @param partial partial result from a worker
+     */
+    public void merge(PartialResult partial) {
+        String[] speakers = partial.getSpeakers();
+        for (int i = 0; i < speakers.length; i++) {
+            statistics.add(speakers[i], partial.getSpeechesCount()[i], partial.getSecurityCount()[i], partial.getWordsCount()[i]);
+        }
+
+        long[] partialFingerprints = partial.getFingerprints();
+        for (int i = 0; i < partialFingerprints.length; i++) {
+            if (!fingerprints.add(partialFingerprints[i])) {
+                byte flags = partial.getRowFlags()[i];
+                statistics.add(speakers[partial.getRowSpeakers()[i]],
+                    (flags & PartialResult.FLAG_SPEECH) != 0 ? -1 : 0,
+                    (flags & PartialResult.FLAG_SECURITY) != 0 ? -1 : 0,
+                    -partial.getRowWords()[i]);
+            }
+        }
+    }
+
+    /**
+     * @return result of evaluation of all merged partial results
+     */
+    public ProcessingResult evaluate() {
+        return statistics.evaluate();
+    }
+
+    /**
+     * The memory of the counters is freed.
+     */
+    @Override
+    public void close() {
+        statistics.close();
+    }
+}
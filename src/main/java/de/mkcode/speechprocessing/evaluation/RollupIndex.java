@@ -0,0 +1,378 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.IntPredicate;
+
+import de.mkcode.speechprocessing.model.Period;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.model.StatisticsRow;
+
+/**
+ * Index of the speeches of every speaker, rolled up by month.
+ *
+ * For every speaker and every topic, speeches and words are counted in monthly buckets.
+ * Only months with speeches have a bucket.
+ * Questions about a period (e.g. most speeches in a year or between two months) are answered
+ * from prefix sums over the buckets sorted by speaker, topic and month, without scanning the rows again.
+ * The index can be extended by further rows at any time; the sorted buckets are rebuilt lazily after changes.
+ *
+ * Like {@link SpeakerStatistics}, the index creates no objects per speaker or row:
+ * speakers and topics are numbered in {@link SpeakerTable}s, buckets and the keys of all added rows
+ * are stored in {@link KeyTable}s outside of the Java heap, the sorted buckets in primitive arrays.
+ * Duplicated rows are filtered out by their complete key (speaker, topic, date and words), the rows themselves are not kept.
+ *
+ * All methods are synchronized, so an index can be shared by concurrent evaluations.
+ * The memory outside of the heap is freed when the index is closed by all of its users, see {@link #retain()}.
+ */
+public class RollupIndex implements AutoCloseable {
+
+    /** Topic key of the buckets for all topics of a speaker, the key of a topic is its id + 1 */
+    private static final int ALL_TOPICS = 0;
+
+    private static final int INITIAL_SIZE = 16;
+
+    /** Speakers with their speeches about 'internal security' and words overall */
+    private final SpeakerTable speakers;
+
+    /** Topics as given in the rows and in lower case */
+    private final SpeakerTable topics;
+
+    /** Speeches and words per speaker id, topic key and month */
+    private final KeyTable buckets;
+
+    /** Keys of the distinct rows: speaker id, topic id, day and words */
+    private final KeyTable rows;
+
+    private Snapshot snapshot;
+
+    private int references = 1;
+
+    public RollupIndex() {
+        this(new SpeakerTable(INITIAL_SIZE), new SpeakerTable(INITIAL_SIZE), new KeyTable(INITIAL_SIZE), new KeyTable(INITIAL_SIZE));
+    }
+
+    private RollupIndex(SpeakerTable speakers, SpeakerTable topics, KeyTable buckets, KeyTable rows) {
+        this.speakers = speakers;
+        this.topics = topics;
+        this.buckets = buckets;
+        this.rows = rows;
+    }
+
+    /**
+     * The row is counted in the buckets of its speaker, its topic and its month,
+     * unless an equal row was already added.
+     *
+     * @param row row from CSV file
+     * @return true if the row was added, false if it is a duplicate
+     */
+    public synchronized boolean add(StatisticsRow row) {
+        int speakerSlot = speakers.insert(row.getSpeaker());
+        int speaker = speakers.id(speakerSlot);
+        int exactTopic = topics.id(topics.insert(row.getTopic()));
+        if (!rows.add(speaker, exactTopic, row.getDate().toEpochDay(), row.getWords(), 0, 0)) {
+            return false;
+        }
+
+        long month = monthKey(YearMonth.from(row.getDate()));
+        int words = SpeakerStatistics.countedWords(row);
+        int topic = topics.id(topics.insert(row.getTopic().toLowerCase(Locale.ROOT)));
+
+        speakers.add(speakerSlot, 0, SpeakerStatistics.isSecuritySpeech(row) ? 1 : 0, words);
+        buckets.add(speaker, ALL_TOPICS, month, 0, 1, words);
+        buckets.add(speaker, topic + 1, month, 0, 1, words);
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * @param row row from CSV file
+     * @return true if an equal row was already added
+     */
+    public synchronized boolean contains(StatisticsRow row) {
+        int speakerSlot = speakers.find(row.getSpeaker());
+        int topicSlot = topics.find(row.getTopic());
+        return speakerSlot >= 0 && topicSlot >= 0
+            && rows.find(speakers.id(speakerSlot), topics.id(topicSlot), row.getDate().toEpochDay(), row.getWords()) >= 0;
+    }
+
+    /**
+     * @return number of distinct rows in the index
+     */
+    public synchronized int getRowCount() {
+        return rows.size();
+    }
+
+    private static long monthKey(YearMonth month) {
+        return month.getYear() * 12L + month.getMonthValue() - 1;
+    }
+
+    /**
+     * @param speaker name of the speaker
+     * @param period months in which speeches are counted
+     * @return number of speeches of the speaker in the period
+     */
+    public synchronized int speeches(String speaker, Period period) {
+        int slot = speakers.find(speaker);
+        return slot < 0 ? 0 : snapshot().count(speakers.id(slot), ALL_TOPICS, monthKey(period.getFrom()), monthKey(period.getTo()));
+    }
+
+    /**
+     * @param speaker name of the speaker
+     * @param topic topic of the speeches (case is ignored)
+     * @param period months in which speeches are counted
+     * @return number of speeches of the speaker about the topic in the period
+     */
+    public synchronized int speeches(String speaker, String topic, Period period) {
+        int slot = speakers.find(speaker);
+        int topicSlot = topics.find(topic.toLowerCase(Locale.ROOT));
+        return slot < 0 || topicSlot < 0 ? 0
+            : snapshot().count(speakers.id(slot), topics.id(topicSlot) + 1, monthKey(period.getFrom()), monthKey(period.getTo()));
+    }
+
+    /**
+     * @param speaker name of the speaker
+     * @param period months in which words are counted
+     * @return words of the speaker in the period
+     */
+    public synchronized long words(String speaker, Period period) {
+        int slot = speakers.find(speaker);
+        return slot < 0 ? 0 : snapshot().words(speakers.id(slot), ALL_TOPICS, monthKey(period.getFrom()), monthKey(period.getTo()));
+    }
+
+    /**
+     * The counters of every speaker are added to the statistics:
+     * speeches in the given period, speeches about 'internal security' and words overall.
+     *
+     * @param statistics statistics to which the counters are added
+     * @param period months in which speeches are counted for the question about the most speeches
+     */
+    public void addTo(SpeakerStatistics statistics, Period period) {
+        addTo(statistics, period, nameHashCode -> true);
+    }
+
+    /**
+     * The counters of the speakers accepted by the filter are added to the statistics,
+     * e.g. only the speakers of one partition.
+     * The filter gets the {@link String#hashCode()} of the name, so no name is created for skipped speakers.
+     *
+     * @param statistics statistics to which the counters are added
+     * @param period months in which speeches are counted for the question about the most speeches
+     * @param speakerFilter filter for the hash codes of the names of the speakers
+     */
+    public synchronized void addTo(SpeakerStatistics statistics, Period period, IntPredicate speakerFilter) {
+        Snapshot sortedBuckets = snapshot();
+        long from = monthKey(period.getFrom());
+        long to = monthKey(period.getTo());
+
+        for (int slot = 0; slot < speakers.capacity(); slot++) {
+            if (speakers.isUsed(slot) && speakerFilter.test(speakers.nameHashCode(slot))) {
+                statistics.add(speakers.speaker(slot),
+                    sortedBuckets.count(speakers.id(slot), ALL_TOPICS, from, to),
+                    speakers.security(slot),
+                    speakers.words(slot));
+            }
+        }
+    }
+
+    /**
+     * @param period months in which speeches are counted for the question about the most speeches
+     * @return result of evaluation
+     */
+    public synchronized ProcessingResult evaluate(Period period) {
+        // Counters are freed as soon as the result is evaluated
+        try (SpeakerStatistics statistics = new SpeakerStatistics(speakers.size())) {
+            addTo(statistics, period);
+            return statistics.evaluate();
+        }
+    }
+
+    /**
+     * @return independent copy of the index, which can be extended without changing this index
+     */
+    public synchronized RollupIndex copy() {
+        return new RollupIndex(speakers.copy(), topics.copy(), buckets.copy(), rows.copy());
+    }
+
+    /**
+     * The memory of the tables outside of the heap and of the sorted buckets,
+     * which are counted even before they are built by the first query.
+     *
+     * @return memory of the index in bytes
+     */
+    public synchronized long getMemoryBytes() {
+        return speakers.getMemoryBytes() + topics.getMemoryBytes() + buckets.getMemoryBytes() + rows.getMemoryBytes()
+            + Snapshot.memoryBytes(speakers.size(), buckets.size());
+    }
+
+    private Snapshot snapshot() {
+        if (snapshot == null) {
+            snapshot = new Snapshot(speakers.size(), topics.size() + 1, buckets);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Another user of the index is registered, e.g. a cache which keeps the index after its evaluation is finished.
+     * Every user closes the index, its memory is freed when the last user closed it.
+     *
+     * @return this index
+     * @throws IllegalStateException if the index is already closed by all users
+     */
+    public synchronized RollupIndex retain() {
+        if (references == 0) {
+            throw new IllegalStateException("Rollup index is already closed");
+        }
+        references++;
+        return this;
+    }
+
+    /**
+     * The index is closed for one user, its memory is freed when all users closed it.
+     * It must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (references > 0 && --references == 0) {
+            speakers.close();
+            topics.close();
+            buckets.close();
+            rows.close();
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Buckets sorted by speaker id, topic key and month, with prefix sums over speeches and words.
+     * The buckets of a speaker, topic and period are found by binary search.
+     */
+    private static class Snapshot {
+
+        /** Index of the first bucket of every speaker id, the last element is the number of buckets */
+        private final int[] speakerStart;
+
+        private final int[] topicKeys;
+
+        private final long[] months;
+
+        /** countPrefix[i] is the sum of the speeches of the buckets 0 to i - 1 */
+        private final int[] countPrefix;
+
+        private final long[] wordsPrefix;
+
+        private Snapshot(int speakerCount, int topicKeyCount, KeyTable buckets) {
+            int size = buckets.size();
+
+            // Counting sort by topic key, then by speaker (stable), so the buckets are sorted by speaker and topic key
+            int[] topicStart = new int[topicKeyCount + 1];
+            for (int slot = 0; slot < buckets.capacity(); slot++) {
+                if (buckets.isUsed(slot)) {
+                    topicStart[buckets.key2(slot) + 1]++;
+                }
+            }
+            for (int topic = 0; topic < topicKeyCount; topic++) {
+                topicStart[topic + 1] += topicStart[topic];
+            }
+            int[] sortedSpeakers = new int[size];
+            int[] sortedTopicKeys = new int[size];
+            long[] sortedMonths = new long[size];
+            for (int slot = 0; slot < buckets.capacity(); slot++) {
+                if (buckets.isUsed(slot)) {
+                    int bucket = topicStart[buckets.key2(slot)]++;
+                    sortedSpeakers[bucket] = buckets.key1(slot);
+                    sortedTopicKeys[bucket] = buckets.key2(slot);
+                    sortedMonths[bucket] = buckets.key3(slot);
+                }
+            }
+
+            speakerStart = new int[speakerCount + 1];
+            for (int bucket = 0; bucket < size; bucket++) {
+                speakerStart[sortedSpeakers[bucket] + 1]++;
+            }
+            for (int speaker = 0; speaker < speakerCount; speaker++) {
+                speakerStart[speaker + 1] += speakerStart[speaker];
+            }
+            int[] next = Arrays.copyOf(speakerStart, speakerCount);
+            topicKeys = new int[size];
+            months = new long[size];
+            for (int bucket = 0; bucket < size; bucket++) {
+                int position = next[sortedSpeakers[bucket]]++;
+                topicKeys[position] = sortedTopicKeys[bucket];
+                months[position] = sortedMonths[bucket];
+            }
+
+            // Months are sorted within every speaker and topic key, speeches and words are looked up in the buckets
+            countPrefix = new int[size + 1];
+            wordsPrefix = new long[size + 1];
+            for (int speaker = 0; speaker < speakerCount; speaker++) {
+                int end = speakerStart[speaker + 1];
+                for (int runStart = speakerStart[speaker]; runStart < end; ) {
+                    int runEnd = lowerBound(topicKeys, runStart, end, topicKeys[runStart] + 1);
+                    Arrays.sort(months, runStart, runEnd);
+                    for (int bucket = runStart; bucket < runEnd; bucket++) {
+                        int slot = buckets.find(speaker, topicKeys[bucket], months[bucket], 0);
+                        countPrefix[bucket + 1] = countPrefix[bucket] + buckets.count(slot);
+                        wordsPrefix[bucket + 1] = wordsPrefix[bucket] + buckets.sum(slot);
+                    }
+                    runStart = runEnd;
+                }
+            }
+        }
+
+        /**
+         * @return memory of the sorted buckets in bytes
+         */
+        private static long memoryBytes(int speakerCount, int bucketCount) {
+            return Integer.BYTES * (speakerCount + 1L) + (long) (Integer.BYTES + Long.BYTES) * bucketCount
+                + (long) (Integer.BYTES + Long.BYTES) * (bucketCount + 1L);
+        }
+
+        private int count(int speaker, int topicKey, long fromMonth, long toMonth) {
+            int start = speakerStart[speaker];
+            int end = speakerStart[speaker + 1];
+            int runStart = lowerBound(topicKeys, start, end, topicKey);
+            int runEnd = lowerBound(topicKeys, runStart, end, topicKey + 1);
+            int first = lowerBound(months, runStart, runEnd, fromMonth);
+            int last = lowerBound(months, first, runEnd, toMonth + 1);
+            return countPrefix[last] - countPrefix[first];
+        }
+
+        private long words(int speaker, int topicKey, long fromMonth, long toMonth) {
+            int start = speakerStart[speaker];
+            int end = speakerStart[speaker + 1];
+            int runStart = lowerBound(topicKeys, start, end, topicKey);
+            int runEnd = lowerBound(topicKeys, runStart, end, topicKey + 1);
+            int first = lowerBound(months, runStart, runEnd, fromMonth);
+            int last = lowerBound(months, first, runEnd, toMonth + 1);
+            return wordsPrefix[last] - wordsPrefix[first];
+        }
+
+        /**
+         * @return index of the first element from start to end - 1 which is at least the value, end if there is none
+         */
+        private static int lowerBound(int[] values, int start, int end, int value) {
+            while (start < end) {
+                int middle = (start + end) >>> 1;
+                if (values[middle] < value) {
+                    start = middle + 1;
+                } else {
+                    end = middle;
+                }
+            }
+            return start;
+        }
+
+        private static int lowerBound(long[] values, int start, int end, long value) {
+            while (start < end) {
+                int middle = (start + end) >>> 1;
+                if (values[middle] < value) {
+                    start = middle + 1;
+                } else {
+                    end = middle;
+                }
+            }
+            return start;
+        }
+    }
+}
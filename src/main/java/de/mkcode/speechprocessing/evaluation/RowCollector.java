@@ -0,0 +1,113 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import java.util.function.Consumer;
+
+import de.mkcode.speechprocessing.model.Period;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.model.StatisticsRow;
+
+/**
+ * Collects the rows of an evaluation and filters duplicates.
+ *
+ * Distinct rows are rolled up into a {@link RollupIndex} until it holds the given number of rows.
+ * Only the monthly counters and the keys of the rows are kept outside of the heap, not the rows themselves,
+ * and the index answers the evaluation for any period without scanning the rows again.
+ * Further rows are handed over to an {@link ExternalAggregation}, which spills them to disk,
+ * so the heap used by the evaluation stays bounded regardless of the size of the CSV files.
+ *
+ * The collector can start with an index of already loaded sources, which is extended by the new rows.
+ * The index is closed together with the collector, unless it was retained (see {@link RollupIndex#retain()}).
+ */
+public class RowCollector implements Consumer<StatisticsRow>, AutoCloseable {
+
+    private final int maxRowsInMemory;
+
+    private final int partitionCount;
+
+    private final RollupIndex rollupIndex;
+
+    private ExternalAggregation externalAggregation;
+
+    /**
+     * @param maxRowsInMemory maximum number of rows rolled up in memory, before rows are spilled to disk
+     * @param partitionCount number of partitions rows are split into when spilled to disk
+     */
+    public RowCollector(int maxRowsInMemory, int partitionCount) {
+        this(maxRowsInMemory, partitionCount, new RollupIndex());
+    }
+
+    /**
+     * @param maxRowsInMemory maximum number of rows rolled up in memory, before rows are spilled to disk
+     * @param partitionCount number of partitions rows are split into when spilled to disk
+     * @param rollupIndex index which is extended by the collected rows (must not be shared), it is closed with the collector
+     */
+    public RowCollector(int maxRowsInMemory, int partitionCount, RollupIndex rollupIndex) {
+        this.maxRowsInMemory = maxRowsInMemory;
+        this.partitionCount = partitionCount;
+        this.rollupIndex = rollupIndex;
+    }
+
+    @Override
+    public void accept(StatisticsRow row) {
+        if (externalAggregation == null && rollupIndex.getRowCount() < maxRowsInMemory) {
+            rollupIndex.add(row);
+            return;
+        }
+
+        // Rows in the index are not spilled again, duplicates among spilled rows are filtered on disk
+        if (!rollupIndex.contains(row)) {
+            if (externalAggregation == null) {
+                externalAggregation = new ExternalAggregation(maxRowsInMemory, partitionCount);
+            }
+            externalAggregation.add(row);
+        }
+    }
+
+    /**
+     * @return true if rows were spilled to disk
+     */
+    public boolean isExternal() {
+        return externalAggregation != null;
+    }
+
+    /**
+     * @return index of the rows collected in memory, complete if no rows were spilled
+     */
+    public RollupIndex getRollupIndex() {
+        return rollupIndex;
+    }
+
+    /**
+     * The collected rows are evaluated for speeches in 2013.
+     *
+     * @return result of evaluation
+     */
+    public ProcessingResult evaluate() {
+        return evaluate(Period.YEAR_2013);
+    }
+
+    /**
+     * The collected rows are evaluated, speeches are counted in the given period.
+     * Without spilled rows, the result is evaluated from the rollup index alone.
+     *
+     * @param period months in which speeches are counted for the question about the most speeches
+     * @return result of evaluation
+     */
+    public ProcessingResult evaluate(Period period) {
+        if (externalAggregation != null) {
+            return externalAggregation.evaluate(period, rollupIndex);
+        }
+        return rollupIndex.evaluate(period);
+    }
+
+    /**
+     * Temporary files of spilled rows are deleted and the index is closed.
+     */
+    @Override
+    public void close() {
+        if (externalAggregation != null) {
+            externalAggregation.close();
+        }
+        rollupIndex.close();
+    }
+}
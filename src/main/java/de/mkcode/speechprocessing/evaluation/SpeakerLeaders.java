@@ -0,0 +1,85 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import de.mkcode.speechprocessing.model.LeastWordy;
+import de.mkcode.speechprocessing.model.MostSecurity;
+import de.mkcode.speechprocessing.model.MostSpeeches;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+
+/**
+ * Leading speakers for every question, updated speaker by speaker.
+ * 
+ * Every speaker must be offered once with its complete counters.
+ * Speakers may come from different tables (e.g. one table per partition),
+ * names are only read from the table when a speaker takes the lead.
+ * If another speaker reaches the same count as the leading speaker, there is no unique result.
+ */
+public class SpeakerLeaders {
+
+    private MostSpeeches mostSpeeches;
+
+    private MostSecurity mostSecurity;
+
+    private LeastWordy leastWordy;
+
+    /**
+     * The counters of the speaker in the given slot are compared with the leading speakers.
+     * A speaker is only considered for a question if the counter of the question is positive.
+     * 
+     * @param table table holding the speaker
+     * @param slot index of a used slot
+     */
+    public void offer(SpeakerTable table, int slot) {
+        // Find the speaker with the highest count of speeches in 2013.
+        int speeches = table.speeches(slot);
+        if (speeches > 0) {
+            if (mostSpeeches == null || speeches > mostSpeeches.getCount()) {
+                mostSpeeches = new MostSpeeches(table.speaker(slot), speeches);
+            } else if (speeches == mostSpeeches.getCount()) {
+                mostSpeeches.setSpeaker(null);
+            }
+        }
+
+        // Find the speaker with the highest count of speeches about 'internal security'.
+        int security = table.security(slot);
+        if (security > 0) {
+            if (mostSecurity == null || security > mostSecurity.getCount()) {
+                mostSecurity = new MostSecurity(table.speaker(slot), security);
+            } else if (security == mostSecurity.getCount()) {
+                mostSecurity.setSpeaker(null);
+            }
+        }
+
+        // Find the speaker with the fewest words.
+        long words = table.words(slot);
+        if (words > 0) {
+            if (leastWordy == null || words < leastWordy.getCount()) {
+                leastWordy = new LeastWordy(table.speaker(slot), words);
+            } else if (words == leastWordy.getCount()) {
+                leastWordy.setSpeaker(null);
+            }
+        }
+    }
+
+    /**
+     * Every speaker of the table is offered.
+     * 
+     * @param table table with complete counters of its speakers
+     */
+    public void offerAll(SpeakerTable table) {
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.isUsed(slot)) {
+                offer(table, slot);
+            }
+        }
+    }
+
+    /**
+     * @return result with the unique leading speakers, null for questions without unique result
+     */
+    public ProcessingResult toResult() {
+        return new ProcessingResult(
+            mostSpeeches == null ? null : mostSpeeches.getSpeaker(),
+            mostSecurity == null ? null : mostSecurity.getSpeaker(),
+            leastWordy == null ? null : leastWordy.getSpeaker());
+    }
+}
@@ -0,0 +1,129 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import de.mkcode.speechprocessing.model.Period;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.model.StatisticsRow;
+
+/**
+ * Counters for each speaker, from which the questions of the evaluation are answered:
+ *  - speeches in 2013
+ *  - speeches about 'internal security'
+ *  - words overall
+ * 
+ * Counters can be added row by row or as already counted values (e.g. from a {@link de.mkcode.speechprocessing.model.PartialResult}).
+ * Negative values are allowed to take back rows counted twice.
+ * 
+ * The counters are kept in a {@link SpeakerTable} outside of the Java heap,
+ * which is freed when the statistics are closed.
+ */
+public class SpeakerStatistics implements AutoCloseable {
+
+    private final SpeakerTable table;
+
+    public SpeakerStatistics() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedSpeakers number of speakers the table is sized for, it grows if needed
+     */
+    public SpeakerStatistics(int expectedSpeakers) {
+        table = new SpeakerTable(expectedSpeakers);
+    }
+
+    /**
+     * @param row row from CSV file
+     * @return true if the row is a speech from 2013
+     */
+    public static boolean isSpeechIn2013(StatisticsRow row) {
+        return row.getDate().getYear() == 2013;
+    }
+
+    /**
+     * @param row row from CSV file
+     * @param period months in which speeches are counted
+     * @return true if the row is a speech within the period
+     */
+    public static boolean isSpeechIn(StatisticsRow row, Period period) {
+        return period.contains(row.getDate());
+    }
+
+    /**
+     * @param row row from CSV file
+     * @return true if the row is a speech about 'internal security'
+     */
+    public static boolean isSecuritySpeech(StatisticsRow row) {
+        return row.getTopic().equalsIgnoreCase("internal security");
+    }
+
+    /**
+     * @param row row from CSV file
+     * @return words of the row which are counted (rows without positive words are not counted)
+     */
+    public static int countedWords(StatisticsRow row) {
+        return row.getWords() > 0 ? row.getWords() : 0;
+    }
+
+    /**
+     * The row is counted for its speaker.
+     * 
+     * @param row row from CSV file
+     */
+    public void add(StatisticsRow row) {
+        add(row.getSpeaker(), isSpeechIn2013(row) ? 1 : 0, isSecuritySpeech(row) ? 1 : 0, countedWords(row));
+    }
+
+    /**
+     * The row is counted for its speaker, speeches are counted in the given period instead of 2013.
+     * 
+     * @param row row from CSV file
+     * @param period months in which speeches are counted
+     */
+    public void add(StatisticsRow row, Period period) {
+        add(row.getSpeaker(), isSpeechIn(row, period) ? 1 : 0, isSecuritySpeech(row) ? 1 : 0, countedWords(row));
+    }
+
+    /**
+     * The given values are added to the counters of the speaker.
+     * A speaker is only considered for a question if the counter of the question is positive,
+     * so counters which drop back to 0 are treated as if the speaker never occured.
+     * 
+     * @param speaker name of the speaker
+     * @param speeches speeches in 2013
+     * @param security speeches about 'internal security'
+     * @param words words overall
+     */
+    public void add(String speaker, int speeches, int security, long words) {
+        table.add(speaker, speeches, security, words);
+    }
+
+    /**
+     * For every question it is evaluated if there is a unique result.
+     * This result is added to {@link ProcessingResult}, otherwise it is null.
+     * 
+     * @return result of evaluation
+     */
+    public ProcessingResult evaluate() {
+        SpeakerLeaders leaders = new SpeakerLeaders();
+        leaders.offerAll(table);
+        return leaders.toResult();
+    }
+
+    /**
+     * Every speaker is offered to the given leaders,
+     * e.g. to evaluate speakers spread over several statistics.
+     * 
+     * @param leaders leading speakers to update
+     */
+    public void offerTo(SpeakerLeaders leaders) {
+        leaders.offerAll(table);
+    }
+
+    /**
+     * The memory of the counters is freed.
+     */
+    @Override
+    public void close() {
+        table.close();
+    }
+}
@@ -0,0 +1,312 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hash table with counters for each speaker, stored outside of the Java heap.
+ *
+ * Even with millions of speakers, no objects are created per speaker,
+ * so the table causes no garbage collection pressure.
+ * The memory is freed explicitly when the table is closed.
+ *
+ * Slots are stored in a direct {@link ByteBuffer} and found by open addressing (linear probing).
+ * Each slot holds the hash of the speaker, the position of the name, a dense id and the three counters.
+ * Words are counted in a long, as the words of a speaker over many CSV files can exceed an int.
+ * Names are stored as chars in a second direct buffer.
+ *
+ * Slots move when the table grows, ids stay the same: speakers are numbered 0, 1, 2, ... in order of their insertion.
+ */
+public class SpeakerTable implements AutoCloseable {
+
+    private static final int SLOT_SIZE = 32;
+
+    private static final int HASH = 0;
+
+    /** Position of the name + 1, 0 marks an empty slot */
+    private static final int NAME_OFFSET = 4;
+
+    private static final int NAME_LENGTH = 8;
+
+    private static final int SPEECHES = 12;
+
+    private static final int SECURITY = 16;
+
+    private static final int ID = 20;
+
+    private static final int WORDS = 24;
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / SLOT_SIZE;
+
+    private ByteBuffer slots;
+
+    private ByteBuffer names;
+
+    private int capacity;
+
+    private int size;
+
+    /** Position for the next name in chars */
+    private int namesEnd;
+
+    public SpeakerTable() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedSpeakers number of speakers the table is sized for, it grows if needed
+     */
+    public SpeakerTable(int expectedSpeakers) {
+        capacity = Integer.highestOneBit(Math.max(16, expectedSpeakers * 4 / 3) - 1) << 1;
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        names = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, Math.max(256, expectedSpeakers * 32L)));
+    }
+
+    private SpeakerTable(SpeakerTable table) {
+        capacity = table.capacity;
+        size = table.size;
+        namesEnd = table.namesEnd;
+        slots = DirectBuffers.copy(table.slots);
+        names = DirectBuffers.copy(table.names);
+    }
+
+    /**
+     * The given values are added to the counters of the speaker.
+     * If its the first occurence a new slot is used.
+     *
+     * @param speaker name of the speaker
+     * @param speeches speeches in 2013
+     * @param security speeches about 'internal security'
+     * @param words words overall
+     */
+    public void add(String speaker, int speeches, int security, long words) {
+        add(insert(speaker), speeches, security, words);
+    }
+
+    /**
+     * The given values are added to the counters of the speaker in the given slot.
+     *
+     * @param slot index of a used slot
+     * @param speeches speeches in 2013
+     * @param security speeches about 'internal security'
+     * @param words words overall
+     */
+    public void add(int slot, int speeches, int security, long words) {
+        int base = slot * SLOT_SIZE;
+        slots.putInt(base + SPEECHES, slots.getInt(base + SPEECHES) + speeches);
+        slots.putInt(base + SECURITY, slots.getInt(base + SECURITY) + security);
+        slots.putLong(base + WORDS, slots.getLong(base + WORDS) + words);
+    }
+
+    /**
+     * Finds the slot of the speaker, a new slot with zero counters is used if the speaker is not in the table yet.
+     * The slot is valid until the next speaker is inserted.
+     *
+     * @param speaker name of the speaker
+     * @return index of the slot
+     */
+    public int insert(String speaker) {
+        int hash = hash(speaker);
+        int mask = capacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int base = slot * SLOT_SIZE;
+            int nameOffset = slots.getInt(base + NAME_OFFSET);
+            if (nameOffset == 0) {
+                if (size + 1 > capacity * 3 / 4) {
+                    grow();
+                    return insert(speaker);
+                }
+                slots.putInt(base + HASH, hash);
+                slots.putInt(base + NAME_OFFSET, storeName(speaker) + 1);
+                slots.putInt(base + NAME_LENGTH, speaker.length());
+                slots.putInt(base + ID, size);
+                size++;
+                return slot;
+            }
+            if (slots.getInt(base + HASH) == hash && nameEquals(nameOffset - 1, slots.getInt(base + NAME_LENGTH), speaker)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * @param speaker name of the speaker
+     * @return index of the slot of the speaker, -1 if the speaker is not in the table
+     */
+    public int find(String speaker) {
+        int hash = hash(speaker);
+        int mask = capacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int base = slot * SLOT_SIZE;
+            int nameOffset = slots.getInt(base + NAME_OFFSET);
+            if (nameOffset == 0) {
+                return -1;
+            }
+            if (slots.getInt(base + HASH) == hash && nameEquals(nameOffset - 1, slots.getInt(base + NAME_LENGTH), speaker)) {
+                return slot;
+            }
+        }
+    }
+
+    private static int hash(String speaker) {
+        int hash = speaker.hashCode() * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean nameEquals(int offset, int length, String speaker) {
+        if (length != speaker.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (names.getChar((offset + i) * 2) != speaker.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int storeName(String speaker) {
+        long required = (long) (namesEnd + speaker.length()) * 2;
+        if (required > names.capacity()) {
+            if (required > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many speakers for table");
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, Math.max(required, 2L * names.capacity())));
+            names.clear().limit(namesEnd * 2);
+            grown.put(names);
+            DirectBuffers.free(names);
+            names = grown;
+        }
+        int offset = namesEnd;
+        for (int i = 0; i < speaker.length(); i++) {
+            names.putChar((offset + i) * 2, speaker.charAt(i));
+        }
+        namesEnd += speaker.length();
+        return offset;
+    }
+
+    /**
+     * The number of slots is doubled and all used slots are moved to their new position.
+     */
+    private void grow() {
+        if (capacity > MAX_CAPACITY / 2) {
+            throw new IllegalStateException("Too many speakers for table");
+        }
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = capacity;
+
+        capacity *= 2;
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            int oldBase = oldSlot * SLOT_SIZE;
+            if (oldSlots.getInt(oldBase + NAME_OFFSET) != 0) {
+                int slot = oldSlots.getInt(oldBase + HASH) & mask;
+                while (slots.getInt(slot * SLOT_SIZE + NAME_OFFSET) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                for (int field = 0; field < SLOT_SIZE; field += 4) {
+                    slots.putInt(slot * SLOT_SIZE + field, oldSlots.getInt(oldBase + field));
+                }
+            }
+        }
+        DirectBuffers.free(oldSlots);
+    }
+
+    /**
+     * @return number of speakers in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of slots, valid slot indices are 0 to capacity - 1
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @param slot index of the slot
+     * @return true if the slot holds a speaker
+     */
+    public boolean isUsed(int slot) {
+        return slots.getInt(slot * SLOT_SIZE + NAME_OFFSET) != 0;
+    }
+
+    /**
+     * @param slot index of a used slot
+     * @return name of the speaker
+     */
+    public String speaker(int slot) {
+        int base = slot * SLOT_SIZE;
+        int offset = slots.getInt(base + NAME_OFFSET) - 1;
+        char[] name = new char[slots.getInt(base + NAME_LENGTH)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = names.getChar((offset + i) * 2);
+        }
+        return new String(name);
+    }
+
+    /**
+     * @param slot index of a used slot
+     * @return {@link String#hashCode()} of the name of the speaker, computed without creating the name
+     */
+    public int nameHashCode(int slot) {
+        int base = slot * SLOT_SIZE;
+        int offset = slots.getInt(base + NAME_OFFSET) - 1;
+        int length = slots.getInt(base + NAME_LENGTH);
+        int hashCode = 0;
+        for (int i = 0; i < length; i++) {
+            hashCode = 31 * hashCode + names.getChar((offset + i) * 2);
+        }
+        return hashCode;
+    }
+
+    /**
+     * @param slot index of a used slot
+     * @return id of the speaker, the number of speakers inserted before it
+     */
+    public int id(int slot) {
+        return slots.getInt(slot * SLOT_SIZE + ID);
+    }
+
+    public int speeches(int slot) {
+        return slots.getInt(slot * SLOT_SIZE + SPEECHES);
+    }
+
+    public int security(int slot) {
+        return slots.getInt(slot * SLOT_SIZE + SECURITY);
+    }
+
+    public long words(int slot) {
+        return slots.getLong(slot * SLOT_SIZE + WORDS);
+    }
+
+    /**
+     * @return memory of the table outside of the Java heap in bytes
+     */
+    public long getMemoryBytes() {
+        return (long) slots.capacity() + names.capacity();
+    }
+
+    /**
+     * @return independent copy of the table with the same slots and ids
+     */
+    public SpeakerTable copy() {
+        return new SpeakerTable(this);
+    }
+
+    /**
+     * The memory of the table is freed, it must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (slots != null) {
+            DirectBuffers.free(slots);
+            DirectBuffers.free(names);
+            slots = null;
+            names = null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package de.mkcode.speechprocessing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Model for the current state of the admission control of evaluations.
+ * It is automatically parsed as JSON when used as return object in REST API.
+ */
+@Data
+@AllArgsConstructor
+public class AdmissionMetrics {
+
+    /** Evaluations admitted since start */
+    private long admittedRequests;
+
+    /** Evaluations rejected since start, because the queue was full or the waiting time exceeded */
+    private long rejectedRequests;
+
+    /** Evaluations currently running */
+    private int runningRequests;
+
+    /** Evaluations currently waiting for admission */
+    private int queueLength;
+
+    /** Estimated memory of the running evaluations and of cached rollup indexes in bytes */
+    private long admittedBytes;
+
+    /** Heap memory available for evaluations in bytes */
+    private long heapBudgetBytes;
+
+    /** Average size of a CSV row in bytes seen in past evaluations */
+    private double bytesPerRow;
+}
@@ -0,0 +1,19 @@
+package de.mkcode.speechprocessing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Model to hold the speaker with the currently 
+ * lowest count of words while processing speakers.
+ */
+@Data
+@AllArgsConstructor
+@EqualsAndHashCode
+public class LeastWordy {
+    
+    private String speaker;
+
+    private long count;
+}
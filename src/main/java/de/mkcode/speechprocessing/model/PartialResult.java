@@ -0,0 +1,113 @@
+package de.mkcode.speechprocessing.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Model for the partial result of an evaluation of some of the CSV files.
+ * It is exchanged in a compact binary form between coordinator and worker instances.
+ *
+ * Contains the counters for each speaker and a fingerprint of every distinct row
+ * together with what the row contributed to the counters.
+ * With the fingerprints, rows contained in several partial results are counted only once when merging.
+ */
+@Data
+@AllArgsConstructor
+public class PartialResult {
+
+    /** Row is a speech from 2013 */
+    public static final byte FLAG_SPEECH = 1;
+
+    /** Row is a speech about 'internal security' */
+    public static final byte FLAG_SECURITY = 2;
+
+    private String[] speakers;
+
+    private int[] speechesCount;
+
+    private int[] securityCount;
+
+    private long[] wordsCount;
+
+    private long[] fingerprints;
+
+    /** Index of the row's speaker in speakers */
+    private int[] rowSpeakers;
+
+    private byte[] rowFlags;
+
+    private int[] rowWords;
+
+    /**
+     * Serializes the partial result.
+     *
+     * @return binary form of the partial result
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(speakers.length);
+            for (int i = 0; i < speakers.length; i++) {
+                out.writeUTF(speakers[i]);
+                out.writeInt(speechesCount[i]);
+                out.writeInt(securityCount[i]);
+                out.writeLong(wordsCount[i]);
+            }
+            out.writeInt(fingerprints.length);
+            for (int i = 0; i < fingerprints.length; i++) {
+                out.writeLong(fingerprints[i]);
+                out.writeInt(rowSpeakers[i]);
+                out.writeByte(rowFlags[i]);
+                out.writeInt(rowWords[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes a partial result.
+     *
+     * @param bytes binary form of the partial result
+     * @return partial result
+     * @throws IOException if the bytes are no valid partial result
+     */
+    public static PartialResult fromBytes(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int speakerCount = in.readInt();
+            String[] speakers = new String[speakerCount];
+            int[] speechesCount = new int[speakerCount];
+            int[] securityCount = new int[speakerCount];
+            long[] wordsCount = new long[speakerCount];
+            for (int i = 0; i < speakerCount; i++) {
+                speakers[i] = in.readUTF();
+                speechesCount[i] = in.readInt();
+                securityCount[i] = in.readInt();
+                wordsCount[i] = in.readLong();
+            }
+
+            int rowCount = in.readInt();
+            long[] fingerprints = new long[rowCount];
+            int[] rowSpeakers = new int[rowCount];
+            byte[] rowFlags = new byte[rowCount];
+            int[] rowWords = new int[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                fingerprints[i] = in.readLong();
+                rowSpeakers[i] = in.readInt();
+                rowFlags[i] = in.readByte();
+                rowWords[i] = in.readInt();
+            }
+
+            return new PartialResult(speakers, speechesCount, securityCount, wordsCount,
+                fingerprints, rowSpeakers, rowFlags, rowWords);
+        }
+    }
+}
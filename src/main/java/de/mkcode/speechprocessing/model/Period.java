@@ -0,0 +1,50 @@
+package de.mkcode.speechprocessing.model;
+
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Model for the months (both inclusive) in which speeches are counted
+ * for the question which politician gave the most speeches.
+ */
+@Data
+@AllArgsConstructor
+public class Period {
+
+    /** Period of the original question: speeches in 2013 */
+    public static final Period YEAR_2013 = new Period(YearMonth.of(2013, 1), YearMonth.of(2013, 12));
+
+    /** First month of a period which is open at its start */
+    public static final YearMonth OPEN_FROM = YearMonth.of(Year.MIN_VALUE, 1);
+
+    /** Last month of a period which is open at its end */
+    public static final YearMonth OPEN_TO = YearMonth.of(Year.MAX_VALUE, 12);
+
+    /** Format of the months in request parameters (yyyy-MM), years with more than 4 digits are signed like +999999999-12 */
+    public static final DateTimeFormatter MONTH_FORMAT = new DateTimeFormatterBuilder()
+        .appendValue(ChronoField.YEAR, 4, 10, SignStyle.EXCEEDS_PAD)
+        .appendLiteral('-')
+        .appendValue(ChronoField.MONTH_OF_YEAR, 2)
+        .toFormatter();
+
+    private final YearMonth from;
+
+    private final YearMonth to;
+
+    /**
+     * @param date date of a speech
+     * @return true if the date is within the period
+     */
+    public boolean contains(LocalDate date) {
+        YearMonth month = YearMonth.from(date);
+        return !month.isBefore(from) && !month.isAfter(to);
+    }
+}
@@ -0,0 +1,40 @@
+package de.mkcode.speechprocessing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Model for the metadata of a CSV source, retrieved without reading its content.
+ * Used to decide whether a source has changed since it was last evaluated.
+ */
+@Data
+@AllArgsConstructor
+public class SourceMetadata {
+
+    private String url;
+
+    /** ETag reported by the source, null if not available */
+    private String eTag;
+
+    /** Last modification time in milliseconds, 0 if not available */
+    private long lastModified;
+
+    /** Length of the content in bytes, -1 if not available */
+    private long contentLength;
+
+    /**
+     * Returns a string identifying the current version of the source.
+     * The ETag is preferred, otherwise last modification time and length are combined.
+     *
+     * @return validator of the source or null if the source provides none
+     */
+    public String getValidator() {
+        if (eTag != null && !eTag.isEmpty()) {
+            return eTag;
+        }
+        if (lastModified > 0) {
+            return lastModified + "-" + contentLength;
+        }
+        return null;
+    }
+}
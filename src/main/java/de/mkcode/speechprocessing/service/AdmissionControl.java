@@ -0,0 +1,336 @@
+package de.mkcode.speechprocessing.service;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.mkcode.speechprocessing.model.AdmissionMetrics;
+import de.mkcode.speechprocessing.model.SourceMetadata;
+import de.mkcode.speechprocessing.utils.UrlUtils;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Admission control for evaluations, so concurrent evaluations of large CSV files
+ * do not exhaust the heap together.
+ *
+ * Before CSV files are loaded, the heap memory of the evaluation is estimated
+ * from the size of the files and the average size of a row seen in past evaluations.
+ * An evaluation is admitted if its estimate fits into the remaining heap budget.
+ * Otherwise it waits in a bounded queue (first come, first served).
+ * If the queue is full or the maximum waiting time is exceeded, an {@link AdmissionRejectedException} is thrown.
+ *
+ * Cached data can reserve memory of the same budget without waiting (see {@link #reserve(long)}).
+ * Before an evaluation waits, the registered reclaimer is asked to release such memory (see {@link #setReclaimer(LongConsumer)}).
+ */
+@Slf4j
+@Component
+public class AdmissionControl {
+
+    public static final double DEFAULT_HEAP_BUDGET_RATIO = 0.5;
+
+    public static final int DEFAULT_MAX_QUEUE_LENGTH = 16;
+
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30_000;
+
+    public static final long DEFAULT_RETRY_AFTER_SECONDS = 10;
+
+    /** Estimated heap memory of a parsed row in the set of rows (row, strings, date, set entry) */
+    public static final long HEAP_BYTES_PER_ROW = 256;
+
+    /**
+     * Estimated memory of a row in a rollup index, outside of the heap but counted against the same budget:
+     * key of the row, bucket for all topics and for the topic of the row, slot and name of a new speaker,
+     * slots and names of a new topic in its exact and lower case spelling (each at the lowest load of its table)
+     * and the share of the sorted buckets. Rows of known speakers and topics need less.
+     */
+    public static final long ROLLUP_BYTES_PER_ROW = 768;
+
+    /** Estimated heap memory of a row merged by a coordinator (fingerprint slots at half load, doubled while growing, and the row of the received partial result) */
+    static final long FINGERPRINT_BYTES_PER_ROW = 64;
+
+    /** Assumed size of a CSV file whose size is unknown */
+    static final long UNKNOWN_SOURCE_BYTES = 10L * 1024 * 1024;
+
+    /** Assumed size of a CSV row until rows have been seen */
+    static final double INITIAL_BYTES_PER_ROW = 50;
+
+    /** Weight of a newly seen CSV file in the average size of a row */
+    private static final double BYTES_PER_ROW_WEIGHT = 0.2;
+
+    private final long heapBudgetBytes;
+
+    private final int maxQueueLength;
+
+    private final long maxWaitMillis;
+
+    private final long retryAfterSeconds;
+
+    private final Deque<Object> queue = new ArrayDeque<>();
+
+    private double bytesPerRow = INITIAL_BYTES_PER_ROW;
+
+    private long admittedBytes;
+
+    private int runningRequests;
+
+    private long admittedRequests;
+
+    private long rejectedRequests;
+
+    /** Called with the missing bytes when an evaluation does not fit into the budget, while holding the lock of this instance */
+    private LongConsumer reclaimer = missingBytes -> { };
+
+    public AdmissionControl() {
+        this((long) (Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_BUDGET_RATIO),
+            DEFAULT_MAX_QUEUE_LENGTH, DEFAULT_MAX_WAIT_MILLIS, DEFAULT_RETRY_AFTER_SECONDS);
+    }
+
+    @Autowired
+    public AdmissionControl(@Value("${evaluation.admission.heap-budget-ratio:" + DEFAULT_HEAP_BUDGET_RATIO + "}") double heapBudgetRatio,
+                            @Value("${evaluation.admission.max-queue-length:" + DEFAULT_MAX_QUEUE_LENGTH + "}") int maxQueueLength,
+                            @Value("${evaluation.admission.max-wait-millis:" + DEFAULT_MAX_WAIT_MILLIS + "}") long maxWaitMillis,
+                            @Value("${evaluation.admission.retry-after-seconds:" + DEFAULT_RETRY_AFTER_SECONDS + "}") long retryAfterSeconds) {
+        this((long) (Runtime.getRuntime().maxMemory() * heapBudgetRatio), maxQueueLength, maxWaitMillis, retryAfterSeconds);
+    }
+
+    public AdmissionControl(long heapBudgetBytes, int maxQueueLength, long maxWaitMillis, long retryAfterSeconds) {
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.maxQueueLength = maxQueueLength;
+        this.maxWaitMillis = maxWaitMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * The heap memory for loading the given CSV files is estimated.
+     * Metadata of the sources is looked up in the given map first and added to it when retrieved.
+     *
+     * @param urls URLs of the CSV files
+     * @param metadataByUrl already retrieved metadata of sources
+     * @return estimated heap memory in bytes
+     */
+    public long estimate(Collection<String> urls, Map<String, SourceMetadata> metadataByUrl) {
+        return estimateRows(urls, metadataByUrl) * HEAP_BYTES_PER_ROW;
+    }
+
+    /**
+     * The memory of a rollup index over all rows of the given CSV files is estimated.
+     *
+     * @param urls URLs of the CSV files
+     * @param metadataByUrl already retrieved metadata of sources
+     * @return estimated memory in bytes
+     */
+    public long estimateRollup(Collection<String> urls, Map<String, SourceMetadata> metadataByUrl) {
+        return estimateRows(urls, metadataByUrl) * ROLLUP_BYTES_PER_ROW;
+    }
+
+    /**
+     * The heap memory for merging the fingerprints of all rows of the given CSV files is estimated,
+     * e.g. for partial results returned by workers.
+     *
+     * @param urls URLs of the CSV files
+     * @param metadataByUrl already retrieved metadata of sources
+     * @return estimated heap memory in bytes
+     */
+    public long estimateFingerprints(Collection<String> urls, Map<String, SourceMetadata> metadataByUrl) {
+        return estimateRows(urls, metadataByUrl) * FINGERPRINT_BYTES_PER_ROW;
+    }
+
+    private long estimateRows(Collection<String> urls, Map<String, SourceMetadata> metadataByUrl) {
+        long sourceBytes = 0;
+        for (String url : urls) {
+            SourceMetadata metadata = metadataByUrl.computeIfAbsent(url, UrlUtils::readMetadata);
+            sourceBytes += metadata == null || metadata.getContentLength() < 0 ? UNKNOWN_SOURCE_BYTES : metadata.getContentLength();
+        }
+
+        synchronized (this) {
+            return (long) (sourceBytes / bytesPerRow);
+        }
+    }
+
+    /**
+     * The size of a loaded CSV file is recorded to improve future estimates.
+     *
+     * @param metadata metadata of the loaded source
+     * @param rows number of parsed rows
+     */
+    public synchronized void recordSource(SourceMetadata metadata, int rows) {
+        if (metadata != null && metadata.getContentLength() > 0 && rows > 0) {
+            double observed = (double) metadata.getContentLength() / rows;
+            bytesPerRow = (1 - BYTES_PER_ROW_WEIGHT) * bytesPerRow + BYTES_PER_ROW_WEIGHT * observed;
+        }
+    }
+
+    /**
+     * Waits until the estimated heap memory fits into the budget.
+     * An estimate larger than the whole budget is admitted when no other evaluation is running.
+     *
+     * @param estimatedBytes estimated heap memory of the evaluation
+     * @return permit which must be closed when the evaluation is finished
+     * @throws AdmissionRejectedException if the queue is full or the waiting time is exceeded
+     */
+    public Permit admit(long estimatedBytes) {
+        long cost = Math.min(estimatedBytes, heapBudgetBytes);
+
+        synchronized (this) {
+            if (queue.isEmpty() && fits(cost)) {
+                return grant(cost);
+            }
+            if (queue.size() >= maxQueueLength) {
+                rejectedRequests++;
+                log.warn("Evaluation rejected, {} evaluations are waiting", queue.size());
+                throw new AdmissionRejectedException("Too many evaluations waiting", retryAfterSeconds);
+            }
+
+            Object ticket = new Object();
+            queue.addLast(ticket);
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            try {
+                while (queue.peekFirst() != ticket || !fits(cost)) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        rejectedRequests++;
+                        log.warn("Evaluation rejected, heap budget not available within {} ms", maxWaitMillis);
+                        throw new AdmissionRejectedException("Heap budget not available", retryAfterSeconds);
+                    }
+                    wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejectedRequests++;
+                throw new AdmissionRejectedException("Waiting for admission interrupted", retryAfterSeconds);
+            } finally {
+                queue.remove(ticket);
+                // the next evaluation in the queue may fit now
+                notifyAll();
+            }
+            return grant(cost);
+        }
+    }
+
+    /**
+     * Waits until additional heap memory of an evaluation which already holds a permit fits into the budget,
+     * e.g. for CSV files which are loaded locally after the workers failed.
+     * The evaluation is not queued again, so it cannot wait behind evaluations waiting for its own budget.
+     * Together with the held permit, at most the whole budget is reserved.
+     *
+     * @param held permit of the running evaluation
+     * @param estimatedBytes estimated additional heap memory
+     * @return permit which must be closed when the additional memory is no longer used
+     * @throws AdmissionRejectedException if the waiting time is exceeded
+     */
+    public Permit admitAdditional(Permit held, long estimatedBytes) {
+        long cost = Math.min(estimatedBytes, heapBudgetBytes - held.cost);
+
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            try {
+                while (!fits(cost)) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        rejectedRequests++;
+                        log.warn("Additional memory rejected, heap budget not available within {} ms", maxWaitMillis);
+                        throw new AdmissionRejectedException("Heap budget not available", retryAfterSeconds);
+                    }
+                    wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejectedRequests++;
+                throw new AdmissionRejectedException("Waiting for admission interrupted", retryAfterSeconds);
+            }
+            admittedBytes += cost;
+            return new Permit(cost, true);
+        }
+    }
+
+    /**
+     * Reserves memory without waiting, e.g. for cached data which is dropped when evaluations need the memory.
+     * Nothing is reserved while evaluations are waiting.
+     *
+     * @param bytes memory of the cached data
+     * @return permit which must be closed when the memory is released, null if the memory does not fit into the budget
+     */
+    public synchronized Permit reserve(long bytes) {
+        if (!queue.isEmpty() || admittedBytes + bytes > heapBudgetBytes) {
+            return null;
+        }
+        admittedBytes += bytes;
+        return new Permit(bytes, true);
+    }
+
+    /**
+     * Registers the reclaimer, which is called with the missing bytes before an evaluation waits.
+     * It may close permits of {@link #reserve(long)}, but must not wait for other threads using this instance.
+     *
+     * @param reclaimer reclaimer of reserved memory, e.g. a cache evicting entries
+     */
+    public synchronized void setReclaimer(LongConsumer reclaimer) {
+        this.reclaimer = reclaimer;
+    }
+
+    /**
+     * @param cost estimated memory of an evaluation
+     * @return true if the memory fits into the budget, after reserved memory was reclaimed if needed
+     */
+    private boolean fits(long cost) {
+        if (admittedBytes + cost > heapBudgetBytes) {
+            reclaimer.accept(admittedBytes + cost - heapBudgetBytes);
+        }
+        return admittedBytes + cost <= heapBudgetBytes;
+    }
+
+    private Permit grant(long cost) {
+        admittedBytes += cost;
+        runningRequests++;
+        admittedRequests++;
+        return new Permit(cost, false);
+    }
+
+    private synchronized void release(long cost, boolean additional) {
+        admittedBytes -= cost;
+        if (!additional) {
+            runningRequests--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return current state of the admission control
+     */
+    public synchronized AdmissionMetrics getMetrics() {
+        return new AdmissionMetrics(admittedRequests, rejectedRequests, runningRequests, queue.size(),
+            admittedBytes, heapBudgetBytes, bytesPerRow);
+    }
+
+    /**
+     * Admission of a running evaluation, its heap budget is released when closed.
+     */
+    public class Permit implements AutoCloseable {
+
+        private final long cost;
+
+        /** True if the permit reserves additional memory of an evaluation counted by another permit */
+        private final boolean additional;
+
+        private boolean released;
+
+        private Permit(long cost, boolean additional) {
+            this.cost = cost;
+            this.additional = additional;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(cost, additional);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package de.mkcode.speechprocessing.service;
+
+/**
+ * Thrown if an evaluation is not admitted, because too many evaluations are waiting
+ * or the heap budget did not become available in time.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return seconds after which the client should retry the request
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,279 @@
+package de.mkcode.speechprocessing.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import de.mkcode.speechprocessing.evaluation.PartialAggregation;
+import de.mkcode.speechprocessing.model.PartialResult;
+import de.mkcode.speechprocessing.model.Period;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.model.SourceMetadata;
+import de.mkcode.speechprocessing.model.StatisticsRow;
+import de.mkcode.speechprocessing.utils.CsvUtils;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coordinator distributing the evaluation of CSV files to worker instances of this service.
+ *
+ * The URLs are assigned round robin to the configured workers ('evaluation.workers').
+ * Each worker evaluates its URLs via '/evaluation/partial' and returns a {@link PartialResult}.
+ * The partial results are merged into the final {@link ProcessingResult}.
+ *
+ * A worker which answers 503 (not admitted) is asked again after the given 'Retry-After',
+ * as long as the timeout allows it.
+ * If a worker fails (I/O error, timeout or 5xx), its URLs are reassigned to the next worker.
+ * A 4xx answer means the request itself is invalid, so it is not reassigned but answered with the same status.
+ * If all workers fail, the URLs are evaluated locally.
+ * A worker answers 502 if it cannot read a source completely, so the URLs are reassigned as well.
+ * Merging the partial results and evaluating locally both wait for admission by the {@link AdmissionControl}.
+ * Without configured workers the coordinator is disabled.
+ */
+@Slf4j
+@Component
+public class EvaluationCoordinator {
+
+    public static final int DEFAULT_TIMEOUT_MILLIS = 600_000;
+
+    /** Waiting time before a busy worker is asked again, if it sends no 'Retry-After' */
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 1000;
+
+    private final List<String> workers;
+
+    private final int timeoutMillis;
+
+    private final AdmissionControl admissionControl;
+
+    private final RestTemplate restTemplate;
+
+    private final ExecutorService executor;
+
+    public EvaluationCoordinator() {
+        this(Collections.emptyList(), DEFAULT_TIMEOUT_MILLIS, new AdmissionControl());
+    }
+
+    @Autowired
+    public EvaluationCoordinator(@Value("${evaluation.workers:}") List<String> workers,
+                                 @Value("${evaluation.workers.timeout-millis:" + DEFAULT_TIMEOUT_MILLIS + "}") int timeoutMillis,
+                                 AdmissionControl admissionControl) {
+        this.workers = workers.stream().map(String::strip).filter(w -> !w.isEmpty()).collect(Collectors.toList());
+        this.timeoutMillis = timeoutMillis;
+        this.admissionControl = admissionControl;
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMillis);
+        requestFactory.setReadTimeout(timeoutMillis);
+        this.restTemplate = new RestTemplate(requestFactory);
+
+        this.executor = this.workers.isEmpty() ? null : Executors.newFixedThreadPool(this.workers.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true if workers are configured
+     */
+    public boolean isEnabled() {
+        return !workers.isEmpty();
+    }
+
+    /**
+     * The URLs are distributed to the workers and the returned partial results are merged.
+     *
+     * @param urls list of URLs
+     * @return result of evaluation
+     */
+    public ProcessingResult evaluate(List<String> urls) {
+        return evaluate(urls, Period.YEAR_2013, new HashMap<>(), new HashSet<>());
+    }
+
+    /**
+     * The URLs are distributed to the workers and the returned partial results are merged.
+     * Speeches are counted in the given period.
+     * The fingerprints of all rows are held while merging, so the evaluation waits for admission first.
+     *
+     * @param urls list of URLs
+     * @param period months in which speeches are counted for the question about the most speeches
+     * @param metadataByUrl already retrieved metadata of sources
+     * @param unreadUrls set to which URLs are added whose source cannot be read completely, also by the local fallback
+     * @return result of evaluation
+     * @throws AdmissionRejectedException if the evaluation or a local fallback is not admitted
+     */
+    public ProcessingResult evaluate(List<String> urls, Period period, Map<String, SourceMetadata> metadataByUrl, Set<String> unreadUrls) {
+        // Assign URLs round robin, the same URL is evaluated only once
+        List<List<String>> assignments = new ArrayList<>();
+        for (int i = 0; i < workers.size(); i++) {
+            assignments.add(new ArrayList<>());
+        }
+        int urlCount = 0;
+        for (String url : new LinkedHashSet<>(urls)) {
+            assignments.get(urlCount++ % workers.size()).add(url);
+        }
+
+        // Metadata is looked up concurrently by local fallbacks
+        Map<String, SourceMetadata> sharedMetadata = new ConcurrentHashMap<>(metadataByUrl);
+        Set<String> sharedUnreadUrls = ConcurrentHashMap.newKeySet();
+
+        try (AdmissionControl.Permit permit = admissionControl.admit(admissionControl.estimateFingerprints(urls, sharedMetadata));
+             PartialAggregation aggregation = new PartialAggregation()) {
+            List<CompletableFuture<PartialResult>> partials = new ArrayList<>();
+            for (int i = 0; i < assignments.size(); i++) {
+                List<String> assignedUrls = assignments.get(i);
+                int worker = i;
+                if (!assignedUrls.isEmpty()) {
+                    partials.add(CompletableFuture.supplyAsync(
+                        () -> evaluatePartial(assignedUrls, period, worker, permit, sharedMetadata, sharedUnreadUrls), executor));
+                }
+            }
+
+            for (CompletableFuture<PartialResult> partial : partials) {
+                aggregation.merge(partial.join());
+            }
+            unreadUrls.addAll(sharedUnreadUrls);
+            return aggregation.evaluate();
+        } catch (CompletionException e) {
+            // a rejected local fallback is answered like any other rejected evaluation
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The URLs are sent to the assigned worker.
+     * A busy worker is asked again after its 'Retry-After', until the timeout would be exceeded.
+     * If the worker fails, the URLs are reassigned to the following workers in turn.
+     * The URLs are sent as strictly encoded query parameters, so e.g. a '+' is not decoded as space by the worker.
+     *
+     * @param urls URLs assigned to the worker
+     * @param period months in which speeches are counted
+     * @param assignedWorker index of the assigned worker
+     * @param permit admission of the evaluation
+     * @param metadataByUrl already retrieved metadata of sources
+     * @param unreadUrls set to which URLs are added whose source cannot be read completely by the local fallback
+     * @return partial result of the URLs
+     * @throws ResponseStatusException if a worker answers with a client error (4xx)
+     */
+    private PartialResult evaluatePartial(List<String> urls, Period period, int assignedWorker, AdmissionControl.Permit permit,
+                                          Map<String, SourceMetadata> metadataByUrl, Set<String> unreadUrls) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        for (int attempt = 0; attempt < workers.size(); attempt++) {
+            String worker = workers.get((assignedWorker + attempt) % workers.size());
+
+            // Values are expanded into URI variables, which encodes all reserved characters
+            Map<String, String> uriVariables = new HashMap<>();
+            UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(worker).path("/evaluation/partial");
+            for (int i = 0; i < urls.size(); i++) {
+                uriBuilder.queryParam("url" + (i + 1), "{url" + (i + 1) + "}");
+                uriVariables.put("url" + (i + 1), urls.get(i));
+            }
+            uriBuilder.queryParam("from", "{from}").queryParam("to", "{to}");
+            // open bounds are sent as the first or last representable month, which the worker parses the same way
+            uriVariables.put("from", Period.MONTH_FORMAT.format(period.getFrom()));
+            uriVariables.put("to", Period.MONTH_FORMAT.format(period.getTo()));
+            URI uri = uriBuilder.encode().buildAndExpand(uriVariables).toUri();
+
+            while (true) {
+                try {
+                    byte[] partial = restTemplate.getForObject(uri, byte[].class);
+                    if (partial == null) {
+                        log.warn("Worker '{}' sent no partial result, reassigning URLs {}", worker, urls);
+                        break;
+                    }
+                    return PartialResult.fromBytes(partial);
+                } catch (HttpServerErrorException.ServiceUnavailable e) {
+                    long retryAfterMillis = retryAfterMillis(e);
+                    if (System.currentTimeMillis() + retryAfterMillis >= deadline) {
+                        log.warn("Worker '{}' stayed busy, reassigning URLs {}", worker, urls);
+                        break;
+                    }
+                    log.warn("Worker '{}' is busy, asking again in {} ms", worker, retryAfterMillis);
+                    try {
+                        Thread.sleep(retryAfterMillis);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                } catch (HttpClientErrorException e) {
+                    // Another worker would reject the request as well
+                    throw new ResponseStatusException(e.getStatusCode(), "Worker '" + worker + "' rejected the evaluation: " + e.getStatusText());
+                } catch (HttpServerErrorException | ResourceAccessException | IOException e) {
+                    log.warn("Worker '{}' failed, reassigning URLs {}", worker, urls);
+                    break;
+                }
+            }
+        }
+
+        log.warn("All workers failed, evaluating URLs {} locally", urls);
+        try (AdmissionControl.Permit localPermit = admissionControl.admitAdditional(permit, admissionControl.estimate(urls, metadataByUrl))) {
+            return evaluatePartialLocally(urls, period, unreadUrls);
+        }
+    }
+
+    private static long retryAfterMillis(HttpServerErrorException e) {
+        HttpHeaders headers = e.getResponseHeaders();
+        String retryAfter = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+        try {
+            return retryAfter == null ? DEFAULT_RETRY_AFTER_MILLIS : Long.parseLong(retryAfter.strip()) * 1000;
+        } catch (NumberFormatException e2) {
+            return DEFAULT_RETRY_AFTER_MILLIS;
+        }
+    }
+
+    /**
+     * Rows from CSV file are parsed and the partial result is created.
+     * If a file cannot be read completely, the rows read so far are kept and the URL is recorded.
+     *
+     * @param urls list of URLs
+     * @param period months in which speeches are counted
+     * @param unreadUrls set to which URLs are added whose source cannot be read completely
+     * @return partial result of the URLs
+     */
+    private static PartialResult evaluatePartialLocally(List<String> urls, Period period, Set<String> unreadUrls) {
+        // Set to filter duplicates
+        Set<StatisticsRow> allRows = new HashSet<>();
+        for (String url : urls) {
+            try {
+                CsvUtils.readCsv(url, allRows::add);
+            } catch (IOException e) {
+                log.error("Error reading file from URL '{}', the result is not cached", url);
+                unreadUrls.add(url);
+            }
+        }
+        return PartialAggregation.createPartial(allRows, period);
+    }
+}
@@ -0,0 +1,96 @@
+package de.mkcode.speechprocessing.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.mkcode.speechprocessing.model.ProcessingResult;
+
+/**
+ * Cache for results of evaluations.
+ *
+ * Results are stored under a key that identifies the evaluated sources and their versions
+ * (the same value is used as ETag of the response).
+ * Entries expire after the configured time to live.
+ * If the maximum number of entries is exceeded, the least recently used entry is evicted.
+ */
+@Component
+public class ResultCache {
+
+    public static final long DEFAULT_TTL_MILLIS = 300_000;
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final long ttlMillis;
+
+    private final LongSupplier clock;
+
+    private final Map<String, CacheEntry> entries;
+
+    @Autowired
+    public ResultCache(@Value("${evaluation.cache.ttl-millis:" + DEFAULT_TTL_MILLIS + "}") long ttlMillis,
+                       @Value("${evaluation.cache.max-entries:" + DEFAULT_MAX_ENTRIES + "}") int maxEntries) {
+        this(ttlMillis, maxEntries, System::currentTimeMillis);
+    }
+
+    ResultCache(long ttlMillis, int maxEntries, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        // LinkedHashMap in access order evicts the least recently used entry
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result for the given key.
+     * Expired entries are removed.
+     *
+     * @param key key identifying the evaluated sources
+     * @return cached result or null if there is no valid entry
+     */
+    public synchronized ProcessingResult get(String key) {
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() - entry.createdAt >= ttlMillis) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.result;
+    }
+
+    /**
+     * Stores the result under the given key.
+     *
+     * @param key key identifying the evaluated sources
+     * @param result result of the evaluation
+     */
+    public synchronized void put(String key, ProcessingResult result) {
+        entries.put(key, new CacheEntry(result, clock.getAsLong()));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class CacheEntry {
+
+        private final ProcessingResult result;
+
+        private final long createdAt;
+
+        private CacheEntry(ProcessingResult result, long createdAt) {
+            this.result = result;
+            this.createdAt = createdAt;
+        }
+    }
+}
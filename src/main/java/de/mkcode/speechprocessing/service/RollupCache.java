@@ -0,0 +1,198 @@
+package de.mkcode.speechprocessing.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.mkcode.speechprocessing.evaluation.RollupIndex;
+
+/**
+ * Cache for the rollup indexes of loaded sources, so questions about other periods
+ * are answered without loading and parsing the sources again.
+ *
+ * Indexes are stored under a key that identifies the sources and their versions, independent of the period.
+ * Cached indexes must not be changed; they are copied before they are extended by further sources.
+ * Entries expire after the configured time to live.
+ *
+ * The memory of every cached index is reserved from the budget of the {@link AdmissionControl}.
+ * If the indexes exceed the configured maximum memory, or an evaluation needs the memory,
+ * the least recently used entries are evicted.
+ * An evicted index is freed as soon as no evaluation uses it anymore.
+ *
+ * The lock of the cache is never held while calling the admission control,
+ * as the admission control calls the cache to reclaim memory while holding its own lock.
+ */
+@Component
+public class RollupCache {
+
+    public static final long DEFAULT_TTL_MILLIS = 300_000;
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private final long ttlMillis;
+
+    private final long maxBytes;
+
+    private final AdmissionControl admissionControl;
+
+    private final LongSupplier clock;
+
+    // LinkedHashMap in access order, the first entry is the least recently used one
+    private final Map<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long memoryBytes;
+
+    @Autowired
+    public RollupCache(@Value("${evaluation.rollup.ttl-millis:" + DEFAULT_TTL_MILLIS + "}") long ttlMillis,
+                       @Value("${evaluation.rollup.max-bytes:" + DEFAULT_MAX_BYTES + "}") long maxBytes,
+                       AdmissionControl admissionControl) {
+        this(ttlMillis, maxBytes, admissionControl, System::currentTimeMillis);
+    }
+
+    RollupCache(long ttlMillis, long maxBytes, AdmissionControl admissionControl, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.maxBytes = maxBytes;
+        this.admissionControl = admissionControl;
+        this.clock = clock;
+        admissionControl.setReclaimer(this::reclaim);
+    }
+
+    /**
+     * Returns the cached index for the given key.
+     * Expired entries are removed.
+     *
+     * @param key key identifying the loaded sources
+     * @return cached index (must not be changed, must be closed after use) or null if there is no valid entry
+     */
+    public RollupIndex get(String key) {
+        CacheEntry expired;
+        synchronized (this) {
+            CacheEntry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (clock.getAsLong() - entry.createdAt < ttlMillis) {
+                return entry.index.retain();
+            }
+            expired = remove(key);
+        }
+        expired.release();
+        return null;
+    }
+
+    /**
+     * Stores the index under the given key, it must not be changed afterwards.
+     * An index larger than the maximum memory is not cached,
+     * as well as an index whose memory cannot be reserved even after evicting all other entries.
+     *
+     * @param key key identifying the loaded sources
+     * @param index rollup index of the sources, it is retained by the cache
+     */
+    public void put(String key, RollupIndex index) {
+        long indexBytes = index.getMemoryBytes();
+        if (indexBytes > maxBytes) {
+            return;
+        }
+        AdmissionControl.Permit reservation = admissionControl.reserve(indexBytes);
+        if (reservation == null) {
+            reclaim(indexBytes);
+            reservation = admissionControl.reserve(indexBytes);
+            if (reservation == null) {
+                return;
+            }
+        }
+
+        List<CacheEntry> evicted = new ArrayList<>();
+        synchronized (this) {
+            CacheEntry replaced = remove(key);
+            if (replaced != null) {
+                evicted.add(replaced);
+            }
+            entries.put(key, new CacheEntry(index.retain(), indexBytes, reservation, clock.getAsLong()));
+            memoryBytes += indexBytes;
+
+            Iterator<CacheEntry> eldest = entries.values().iterator();
+            while (memoryBytes > maxBytes) {
+                CacheEntry entry = eldest.next();
+                eldest.remove();
+                memoryBytes -= entry.memoryBytes;
+                evicted.add(entry);
+            }
+        }
+        evicted.forEach(CacheEntry::release);
+    }
+
+    /**
+     * The least recently used entries are evicted until the given memory is released or the cache is empty,
+     * e.g. when an evaluation needs the memory.
+     *
+     * @param bytes memory to release
+     */
+    public void reclaim(long bytes) {
+        List<CacheEntry> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<CacheEntry> eldest = entries.values().iterator();
+            long released = 0;
+            while (released < bytes && eldest.hasNext()) {
+                CacheEntry entry = eldest.next();
+                eldest.remove();
+                memoryBytes -= entry.memoryBytes;
+                released += entry.memoryBytes;
+                evicted.add(entry);
+            }
+        }
+        evicted.forEach(CacheEntry::release);
+    }
+
+    private CacheEntry remove(String key) {
+        CacheEntry entry = entries.remove(key);
+        if (entry != null) {
+            memoryBytes -= entry.memoryBytes;
+        }
+        return entry;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return memory of all cached indexes in bytes
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    private static class CacheEntry {
+
+        private final RollupIndex index;
+
+        private final long memoryBytes;
+
+        private final AdmissionControl.Permit reservation;
+
+        private final long createdAt;
+
+        private CacheEntry(RollupIndex index, long memoryBytes, AdmissionControl.Permit reservation, long createdAt) {
+            this.index = index;
+            this.memoryBytes = memoryBytes;
+            this.reservation = reservation;
+            this.createdAt = createdAt;
+        }
+
+        /**
+         * The reserved memory is released and the index is closed for the cache.
+         */
+        private void release() {
+            reservation.close();
+            index.close();
+        }
+    }
+}
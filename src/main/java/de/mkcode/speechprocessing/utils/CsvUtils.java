@@ -1,14 +1,19 @@
 package de.mkcode.speechprocessing.utils;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -38,32 +43,136 @@ public class CsvUtils {
      */
     public static List<StatisticsRow> readCsvFromUrl(String urlString) {
         List<StatisticsRow> rows = new ArrayList<>();
+        readCsvFromUrl(urlString, rows::add);
+        return rows;
+    }
 
+    /**
+     * It is tried to load the CSV file from the given URL string.
+     * Every correct row is passed to the consumer while the file is read,
+     * so the rows do not have to be held in memory together.
+     * Rows which cannot be parsed are skipped like in {@link #readCsvFromUrl(String)}.
+     * If the file cannot be read, an error is logged and the rows read so far are kept.
+     * 
+     * @param urlString URL of the CSV file
+     * @param consumer consumer of every correct row from CSV file
+     * @return number of rows passed to the consumer
+     */
+    public static int readCsvFromUrl(String urlString, Consumer<StatisticsRow> consumer) {
+        RowCounter counter = new RowCounter(consumer);
         try {
-            URL url = new URL(urlString);
-            CSVParser csvParser = CSVParser.parse(url, StandardCharsets.UTF_8, CSVFormat.DEFAULT);
+            readCsv(urlString, counter);
+        } catch (MalformedURLException e1) {
+            log.error("URL '{}' is malformed", urlString);
+        } catch (IOException e2) {
+            log.error("Error reading file from URL '{}'", urlString);
+        }
+        return counter.rowCount;
+    }
+
+    /**
+     * The CSV file is loaded from the given URL string like in {@link #readCsvFromUrl(String, Consumer)},
+     * but a file which cannot be read completely is reported to the caller.
+     * A download which ends before the announced content length is also reported.
+     * Rows read before the error have already been passed to the consumer.
+     * 
+     * @param urlString URL of the CSV file
+     * @param consumer consumer of every correct row from CSV file
+     * @return number of rows passed to the consumer
+     * @throws IOException if the URL is malformed or the file cannot be read completely
+     */
+    public static int readCsv(String urlString, Consumer<StatisticsRow> consumer) throws IOException {
+        int rowCount = 0;
+
+        URL url = new URL(urlString);
+        URLConnection connection = url.openConnection();
+        try (CountingInputStream in = new CountingInputStream(connection.getInputStream());
+             CSVParser csvParser = CSVParser.parse(in, StandardCharsets.UTF_8, CSVFormat.DEFAULT)) {
             for(CSVRecord csvRecord : csvParser) {
+                StatisticsRow row;
                 try {
                     String speaker = csvRecord.get(0).strip();
                     String topic = csvRecord.get(1).strip();
                     LocalDate date = LocalDate.parse(csvRecord.get(2).strip(), dtf);
                     int words = Integer.parseInt(csvRecord.get(3).strip());
 
-                    rows.add(new StatisticsRow(speaker, topic, date, words));
+                    row = new StatisticsRow(speaker, topic, date, words);
                 } catch (DateTimeParseException e1) {
                     log.warn("Date could not be parsed. Row {} not added.", csvRecord);
+                    continue;
                 } catch (NumberFormatException e2) {
                     log.warn("Words could not be parsed. Row {} not added.", csvRecord);
+                    continue;
                 } catch (Exception e3) {
                     log.warn("CSV row {} malformed.", csvRecord);
+                    continue;
                 }
+                consumer.accept(row);
+                rowCount++;
             }
-        } catch (MalformedURLException e1) {
-            log.error("URL '{}' is malformed", urlString);
-        } catch (IOException e2) {
-            log.error("Error reading file from URL '{}'", urlString);
+
+            long contentLength = connection.getContentLengthLong();
+            if (contentLength >= 0 && in.byteCount < contentLength) {
+                throw new IOException("Only " + in.byteCount + " of " + contentLength + " bytes read from URL '" + urlString + "'");
+            }
+        } catch (IllegalStateException | UncheckedIOException e) {
+            // thrown by the iterator of the parser if reading fails within the file
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
         }
 
-        return rows;
+        return rowCount;
+    }
+
+    /**
+     * Counts the bytes read from the stream.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long byteCount;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                byteCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                byteCount += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Counts the rows passed to the consumer, also if reading fails later.
+     */
+    private static class RowCounter implements Consumer<StatisticsRow> {
+
+        private final Consumer<StatisticsRow> consumer;
+
+        private int rowCount;
+
+        private RowCounter(Consumer<StatisticsRow> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(StatisticsRow row) {
+            consumer.accept(row);
+            rowCount++;
+        }
     }
 }
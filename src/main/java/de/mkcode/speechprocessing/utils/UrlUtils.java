@@ -0,0 +1,66 @@
+package de.mkcode.speechprocessing.utils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import de.mkcode.speechprocessing.model.SourceMetadata;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Utility class for retrieving information about sources behind URLs.
+ */
+@Slf4j
+public class UrlUtils {
+
+    /**
+     * It is tried to retrieve the metadata of the source behind the given URL string
+     * without reading its content.
+     * For 'file' URLs the file attributes are used, otherwise a HEAD request is sent.
+     *
+     * @param urlString URL of the source
+     * @return metadata of the source or null if it could not be retrieved
+     */
+    public static SourceMetadata readMetadata(String urlString) {
+        try {
+            URL url = new URL(urlString);
+
+            if ("file".equals(url.getProtocol())) {
+                Path path = Paths.get(url.toURI());
+                return new SourceMetadata(urlString, null,
+                    Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+            }
+
+            URLConnection connection = url.openConnection();
+            if (connection instanceof HttpURLConnection) {
+                HttpURLConnection httpConnection = (HttpURLConnection) connection;
+                try {
+                    httpConnection.setRequestMethod("HEAD");
+                    if (httpConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                        log.warn("Metadata of URL '{}' not available (status {})", urlString, httpConnection.getResponseCode());
+                        return null;
+                    }
+                    return new SourceMetadata(urlString, httpConnection.getHeaderField("ETag"),
+                        httpConnection.getLastModified(), httpConnection.getContentLengthLong());
+                } finally {
+                    httpConnection.disconnect();
+                }
+            }
+            return new SourceMetadata(urlString, null, connection.getLastModified(), connection.getContentLengthLong());
+        } catch (MalformedURLException | URISyntaxException e1) {
+            log.error("URL '{}' is malformed", urlString);
+        } catch (IOException e2) {
+            log.error("Error reading metadata from URL '{}'", urlString);
+        } catch (Exception e3) {
+            log.error("Metadata of URL '{}' could not be retrieved", urlString);
+        }
+
+        return null;
+    }
+}
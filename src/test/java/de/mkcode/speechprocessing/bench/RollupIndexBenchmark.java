@@ -0,0 +1,89 @@
+package de.mkcode.speechprocessing.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import de.mkcode.speechprocessing.controller.SpeechProcessingController;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+
+/**
+ * Measures '/evaluation' with a period through the controller, including the cost of building the rollup index.
+ *
+ * For CSV files of 100.000, 500.000 and 2.000.000 distinct rows, the first call parses the file and builds the index,
+ * the following calls ask for other periods over the unchanged file and are answered from the cached index.
+ * Every call uses a new period, so the result cache does not answer it.
+ * Not part of the test run, it is started manually after 'mvn test-compile':
+ *
+ * <pre>
+ * mvn -q dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx2g -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *      de.mkcode.speechprocessing.bench.RollupIndexBenchmark
+ * </pre>
+ */
+public class RollupIndexBenchmark {
+
+    private static final int[] ROW_COUNTS = { 100_000, 500_000, 2_000_000 };
+
+    private static final int SPEAKERS = 10_000;
+
+    private static final int CACHED_CALLS = 50;
+
+    private static final String[] TOPICS = { "Internal Security", "Coal Subsidies", "Education Policy" };
+
+    public static void main(String[] args) throws IOException {
+        for (int rowCount : ROW_COUNTS) {
+            Path file = generateFile(rowCount);
+            try {
+                measure(rowCount, file);
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static void measure(int rowCount, Path file) {
+        SpeechProcessingController controller = new SpeechProcessingController();
+        Map<String, String> params = new HashMap<>();
+        params.put("url1", file.toUri().toString());
+        params.put("from", "2010-01");
+        params.put("to", "2010-12");
+
+        long start = System.nanoTime();
+        ProcessingResult first = controller.processStatistics(params);
+        long firstMicros = (System.nanoTime() - start) / 1_000;
+
+        long checksum = first.hashCode();
+        start = System.nanoTime();
+        for (int i = 0; i < CACHED_CALLS; i++) {
+            YearMonth from = YearMonth.of(2005, 1).plusMonths(i);
+            params.put("from", from.toString());
+            params.put("to", from.plusMonths(23).toString());
+            checksum += controller.processStatistics(params).hashCode();
+        }
+        long cachedMicros = (System.nanoTime() - start) / 1_000 / CACHED_CALLS;
+
+        System.out.printf("%,d rows: first call (parse and build) %,d ms, other period from cached index %,d us (%d)%n",
+            rowCount, firstMicros / 1_000, cachedMicros, checksum);
+    }
+
+    private static Path generateFile(int rowCount) throws IOException {
+        Path file = Files.createTempFile("statistics_bench", ".csv");
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < rowCount; i++) {
+                // the row number in the words keeps the rows distinct
+                writer.write("Speaker " + random.nextInt(SPEAKERS) + ", " + TOPICS[random.nextInt(TOPICS.length)] + ", "
+                    + LocalDate.of(2005, 1, 1).plusDays(random.nextInt(3650)) + ", " + (i + 1));
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+}
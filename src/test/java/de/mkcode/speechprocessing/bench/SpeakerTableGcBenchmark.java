@@ -0,0 +1,88 @@
+package de.mkcode.speechprocessing.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.mkcode.speechprocessing.evaluation.SpeakerStatistics;
+
+/**
+ * Compares the garbage collection caused by counting speakers in HashMaps
+ * with the off-heap {@link de.mkcode.speechprocessing.evaluation.SpeakerTable} behind {@link SpeakerStatistics}.
+ *
+ * 5M distinct speakers are updated 10M times, in 3 rounds. Both variants generate the same key strings.
+ * Not part of the test run, it is started manually after 'mvn test-compile', once per variant:
+ *
+ * <pre>
+ * mvn -q dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx3g -XX:+UseG1GC -Xlog:gc:target/gc-maps.log \
+ *      -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *      de.mkcode.speechprocessing.bench.SpeakerTableGcBenchmark maps
+ * java -Xmx3g -XX:+UseG1GC -Xlog:gc:target/gc-table.log \
+ *      -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *      de.mkcode.speechprocessing.bench.SpeakerTableGcBenchmark table
+ * </pre>
+ *
+ * Pauses are read from the GC logs, the summary line is printed to standard out.
+ */
+public class SpeakerTableGcBenchmark {
+
+    private static final int SPEAKERS = 5_000_000;
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        if (args.length != 1 || !(args[0].equals("maps") || args[0].equals("table"))) {
+            System.err.println("Usage: SpeakerTableGcBenchmark maps|table");
+            System.exit(1);
+        }
+        boolean offHeap = args[0].equals("table");
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+
+        long checksum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            checksum += offHeap ? countInTable() : countInMaps();
+        }
+
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+        long gcMillis = 0;
+        long gcCount = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcMillis += gc.getCollectionTime();
+            gcCount += gc.getCollectionCount();
+        }
+        System.out.printf("%s: wall %d ms, allocated %d MB, GC count %d, GC time %d ms (%d)%n", args[0], wallMillis,
+            (threads.getThreadAllocatedBytes(thread) - allocatedBefore) >> 20, gcCount, gcMillis, checksum);
+    }
+
+    private static long countInTable() {
+        try (SpeakerStatistics statistics = new SpeakerStatistics()) {
+            for (int i = 0; i < 2 * SPEAKERS; i++) {
+                statistics.add("Speaker " + (i % SPEAKERS), i & 1, i % 3 == 0 ? 1 : 0, i % 1000 + 1);
+            }
+            return statistics.evaluate().hashCode();
+        }
+    }
+
+    private static long countInMaps() {
+        Map<String, Integer> speeches = new HashMap<>();
+        Map<String, Integer> security = new HashMap<>();
+        Map<String, Integer> words = new HashMap<>();
+        for (int i = 0; i < 2 * SPEAKERS; i++) {
+            String speaker = "Speaker " + (i % SPEAKERS);
+            if ((i & 1) == 1) {
+                speeches.merge(speaker, 1, Integer::sum);
+            }
+            if (i % 3 == 0) {
+                security.merge(speaker, 1, Integer::sum);
+            }
+            words.merge(speaker, i % 1000 + 1, Integer::sum);
+        }
+        return speeches.size() + security.size() + words.size();
+    }
+}
@@ -1,10 +1,20 @@
 package de.mkcode.speechprocessing.controller;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -12,13 +22,43 @@ import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 import org.slf4j.LoggerFactory;
-
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.read.ListAppender;
+import de.mkcode.speechprocessing.evaluation.ExternalAggregation;
 import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.service.AdmissionControl;
+import de.mkcode.speechprocessing.service.AdmissionRejectedException;
+import de.mkcode.speechprocessing.service.EvaluationCoordinator;
+import de.mkcode.speechprocessing.service.ResultCache;
+import de.mkcode.speechprocessing.service.RollupCache;
+import de.mkcode.speechprocessing.utils.CsvUtils;
 
 public class SpeechProcessingControllerTest {
+
+    /**
+     * @param readUrls list to which the URL of every read CSV file is added
+     * @return controller reading CSV files like the default one
+     */
+    private static SpeechProcessingController controllerRecordingReads(List<String> readUrls) {
+        AdmissionControl admissionControl = new AdmissionControl();
+        return new SpeechProcessingController(new ResultCache(ResultCache.DEFAULT_TTL_MILLIS, ResultCache.DEFAULT_MAX_ENTRIES),
+            new RollupCache(RollupCache.DEFAULT_TTL_MILLIS, RollupCache.DEFAULT_MAX_BYTES, admissionControl), new EvaluationCoordinator(), admissionControl,
+            SpeechProcessingController.DEFAULT_MAX_ROWS_IN_MEMORY,
+            (url, consumer) -> {
+                readUrls.add(url);
+                return CsvUtils.readCsv(url, consumer);
+            });
+    }
     
     @Test
     public void testProcessStatisticsFromStatisticsRow_Successful() {
@@ -206,4 +246,346 @@ public class SpeechProcessingControllerTest {
         assertEquals("Alexander Abel", result.getMostSecurity());
         assertEquals(null, result.getLeastWordy());
     }
+
+    @Test
+    public void testProcessStatisticsFromStatisticsRow_NotUniqueMostSecurityAbove127() throws IOException {
+        SpeechProcessingController spc = new SpeechProcessingController();
+
+        // counts above the Integer cache, a tie must not be missed by comparing references
+        Path file = Files.createTempFile("statistics", ".csv");
+        try {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String date = LocalDate.of(2012, 1, 1).plusDays(i).toString();
+                lines.add("Alexander Abel, Internal Security, " + date + ", 100");
+                lines.add("Bernhard Belling, Internal Security, " + date + ", 200");
+            }
+            Files.write(file, lines);
+
+            Map<String, String> params = new HashMap<>();
+            params.put("url1", file.toUri().toString());
+
+            ProcessingResult result = spc.processStatistics(params);
+
+            assertNull(result.getMostSecurity());
+            assertEquals("Alexander Abel", result.getLeastWordy());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testProcessStatistics_NotModified() {
+        List<String> readUrls = new ArrayList<>();
+        SpeechProcessingController spc = controllerRecordingReads(readUrls);
+
+        File file = new File("src/test/resources/test_statistics.csv");
+
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("url1", "file://" + file.getAbsolutePath());
+
+        // first poll evaluates the CSV file and returns the ETag
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        ResponseEntity<ProcessingResult> result = spc.processStatistics(params,
+            new ServletWebRequest(new MockHttpServletRequest("GET", "/evaluation"), firstResponse));
+
+        assertNotNull(result);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("Bernhard Belling", result.getBody().getMostSpeeches());
+        String eTag = result.getHeaders().getETag();
+        assertNotNull(eTag);
+        assertEquals(1, readUrls.size());
+
+        // second poll with matching ETag is not modified
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/evaluation");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+        result = spc.processStatistics(params, new ServletWebRequest(request, secondResponse));
+
+        assertNull(result);
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), secondResponse.getStatus());
+
+        // third poll without ETag is answered from the cache
+        result = spc.processStatistics(params,
+            new ServletWebRequest(new MockHttpServletRequest("GET", "/evaluation"), new MockHttpServletResponse()));
+
+        assertEquals(eTag, result.getHeaders().getETag());
+        assertEquals("Bernhard Belling", result.getBody().getMostSpeeches());
+        assertEquals("Alexander Abel", result.getBody().getMostSecurity());
+        assertEquals("Caesare Collins", result.getBody().getLeastWordy());
+
+        // no further parse work after the first poll
+        assertEquals(1, readUrls.size());
+    }
+
+    @Test
+    public void testProcessStatistics_BrokenSourceNotCached() {
+        // the first read fails after the first row, like a download which breaks off
+        List<String> readUrls = new ArrayList<>();
+        AdmissionControl admissionControl = new AdmissionControl();
+        SpeechProcessingController spc = new SpeechProcessingController(
+            new ResultCache(ResultCache.DEFAULT_TTL_MILLIS, ResultCache.DEFAULT_MAX_ENTRIES),
+            new RollupCache(RollupCache.DEFAULT_TTL_MILLIS, RollupCache.DEFAULT_MAX_BYTES, admissionControl), new EvaluationCoordinator(), admissionControl,
+            SpeechProcessingController.DEFAULT_MAX_ROWS_IN_MEMORY,
+            (url, consumer) -> {
+                readUrls.add(url);
+                if (readUrls.size() == 1) {
+                    consumer.accept(CsvUtils.readCsvFromUrl(url).get(0));
+                    throw new IOException("Connection reset");
+                }
+                return CsvUtils.readCsv(url, consumer);
+            });
+
+        File file = new File("src/test/resources/test_statistics.csv");
+
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("url1", "file://" + file.getAbsolutePath());
+
+        ResponseEntity<ProcessingResult> result = spc.processStatistics(params,
+            new ServletWebRequest(new MockHttpServletRequest("GET", "/evaluation"), new MockHttpServletResponse()));
+
+        // incomplete result is neither identified by an ETag nor cached
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertNull(result.getHeaders().getETag());
+        assertNull(result.getBody().getMostSpeeches());
+        assertEquals("Alexander Abel", result.getBody().getLeastWordy());
+
+        result = spc.processStatistics(params,
+            new ServletWebRequest(new MockHttpServletRequest("GET", "/evaluation"), new MockHttpServletResponse()));
+
+        assertEquals(2, readUrls.size());
+        assertNotNull(result.getHeaders().getETag());
+        assertEquals("Bernhard Belling", result.getBody().getMostSpeeches());
+    }
+
+    @Test
+    public void testProcessStatistics_SourceModified() throws IOException {
+        SpeechProcessingController spc = new SpeechProcessingController();
+
+        Path file = Files.createTempFile("statistics", ".csv");
+        try {
+            Files.copy(Paths.get("src/test/resources/test_statistics.csv"), file, StandardCopyOption.REPLACE_EXISTING);
+
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put("url1", file.toUri().toString());
+
+            ResponseEntity<ProcessingResult> result = spc.processStatistics(params,
+                new ServletWebRequest(new MockHttpServletRequest("GET", "/evaluation"), new MockHttpServletResponse()));
+            String eTag = result.getHeaders().getETag();
+            assertEquals("Bernhard Belling", result.getBody().getMostSpeeches());
+
+            // changed source results in new ETag and new evaluation
+            Files.copy(Paths.get("src/test/resources/test_statistics_notUniqueMostSpeeches.csv"), file, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/evaluation");
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+            result = spc.processStatistics(params, new ServletWebRequest(request, new MockHttpServletResponse()));
+
+            assertNotNull(result);
+            assertNotEquals(eTag, result.getHeaders().getETag());
+            assertNull(result.getBody().getMostSpeeches());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testProcessStatisticsBatch_SharedParsing() {
+        List<String> readUrls = new ArrayList<>();
+        SpeechProcessingController spc = controllerRecordingReads(readUrls);
+
+        String statistics = "file://" + new File("src/test/resources/test_statistics.csv").getAbsolutePath();
+        String doubleRow = "file://" + new File("src/test/resources/test_statistics_doubleRow.csv").getAbsolutePath();
+        String notUniqueMostSpeeches = "file://" + new File("src/test/resources/test_statistics_notUniqueMostSpeeches.csv").getAbsolutePath();
+
+        List<ProcessingResult> results = spc.processStatisticsBatch(List.of(
+            List.of(statistics),
+            List.of(statistics, doubleRow),
+            List.of(doubleRow, notUniqueMostSpeeches),
+            List.of(notUniqueMostSpeeches)));
+
+        assertEquals(4, results.size());
+
+        assertEquals("Bernhard Belling", results.get(0).getMostSpeeches());
+        assertEquals("Alexander Abel", results.get(0).getMostSecurity());
+        assertEquals("Caesare Collins", results.get(0).getLeastWordy());
+
+        // every distinct file was read exactly once for the batch
+        assertEquals(List.of(statistics, doubleRow, notUniqueMostSpeeches), readUrls);
+
+        // every set is evaluated like a single call, duplicates are filtered out within the set
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("url1", statistics);
+        params.put("url2", doubleRow);
+        assertEquals(new SpeechProcessingController().processStatistics(params), results.get(1));
+
+        params = new LinkedHashMap<>();
+        params.put("url1", doubleRow);
+        params.put("url2", notUniqueMostSpeeches);
+        assertEquals(new SpeechProcessingController().processStatistics(params), results.get(2));
+
+        params = new LinkedHashMap<>();
+        params.put("url1", notUniqueMostSpeeches);
+        assertEquals(new SpeechProcessingController().processStatistics(params), results.get(3));
+    }
+
+    @Test
+    public void testProcessStatistics_AdmissionRejected() {
+        // no evaluation may wait and the budget is used up
+        AdmissionControl admissionControl = new AdmissionControl(1L, 0, 0, 7);
+        SpeechProcessingController spc = new SpeechProcessingController(
+            new ResultCache(ResultCache.DEFAULT_TTL_MILLIS, ResultCache.DEFAULT_MAX_ENTRIES),
+            new RollupCache(RollupCache.DEFAULT_TTL_MILLIS, RollupCache.DEFAULT_MAX_BYTES, admissionControl), new EvaluationCoordinator(), admissionControl,
+            SpeechProcessingController.DEFAULT_MAX_ROWS_IN_MEMORY);
+
+        File file = new File("src/test/resources/test_statistics.csv");
+
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("url1", "file://" + file.getAbsolutePath());
+
+        try (AdmissionControl.Permit permit = admissionControl.admit(1)) {
+            AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class, () -> spc.processStatistics(params));
+
+            ResponseEntity<String> response = spc.handleAdmissionRejected(e);
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+            assertEquals("7", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        }
+
+        // admitted again after the budget is released
+        ProcessingResult result = spc.processStatistics(params);
+        assertEquals("Bernhard Belling", result.getMostSpeeches());
+        assertEquals(2, admissionControl.getMetrics().getAdmittedRequests());
+        assertEquals(1, admissionControl.getMetrics().getRejectedRequests());
+    }
+
+    @Test
+    public void testProcessStatistics_Period() {
+        SpeechProcessingController spc = new SpeechProcessingController();
+
+        File file = new File("src/test/resources/test_statistics.csv");
+
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("url1", "file://" + file.getAbsolutePath());
+        params.put("from", "2012-01");
+        params.put("to", "2012-12");
+
+        ProcessingResult result = spc.processStatistics(params);
+        assertEquals("Alexander Abel", result.getMostSpeeches());
+        assertEquals("Alexander Abel", result.getMostSecurity());
+        assertEquals("Caesare Collins", result.getLeastWordy());
+
+        // open end, every speaker has one speech since November 2012
+        params.remove("to");
+        params.put("from", "2012-11");
+        result = spc.processStatistics(params);
+        assertNull(result.getMostSpeeches());
+
+        // cached result of the default period is not mixed up with other periods
+        params.remove("from");
+        result = spc.processStatistics(params);
+        assertEquals("Bernhard Belling", result.getMostSpeeches());
+    }
+
+    @Test
+    public void testProcessStatistics_InvalidPeriod() {
+        SpeechProcessingController spc = new SpeechProcessingController();
+
+        File file = new File("src/test/resources/test_statistics.csv");
+
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("url1", "file://" + file.getAbsolutePath());
+        params.put("from", "2012-13");
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> spc.processStatistics(params));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+
+        // empty period
+        params.put("from", "2013-02");
+        params.put("to", "2013-01");
+
+        e = assertThrows(ResponseStatusException.class, () -> spc.processStatistics(params));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+    }
+
+    @Test
+    public void testProcessStatistics_OtherPeriodFromRollup() {
+        List<String> readUrls = new ArrayList<>();
+        SpeechProcessingController spc = controllerRecordingReads(readUrls);
+
+        File file = new File("src/test/resources/test_statistics.csv");
+
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("url1", "file://" + file.getAbsolutePath());
+
+        assertEquals("Bernhard Belling", spc.processStatistics(params).getMostSpeeches());
+        assertEquals(1, readUrls.size());
+
+        // another period over the unchanged source is evaluated from the cached rollup
+        params.put("from", "2012-01");
+        params.put("to", "2012-12");
+
+        ProcessingResult result = spc.processStatistics(params);
+        assertEquals(new SpeechProcessingController().processStatistics(params), result);
+        assertEquals("Alexander Abel", result.getMostSpeeches());
+        assertEquals(1, readUrls.size());
+    }
+
+    @Test
+    public void testProcessStatistics_RollupExtendedBySource() {
+        List<String> readUrls = new ArrayList<>();
+        SpeechProcessingController spc = controllerRecordingReads(readUrls);
+
+        String statistics = "file://" + new File("src/test/resources/test_statistics.csv").getAbsolutePath();
+        String notUniqueMostSpeeches = "file://" + new File("src/test/resources/test_statistics_notUniqueMostSpeeches.csv").getAbsolutePath();
+
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("url1", statistics);
+        spc.processStatistics(params);
+
+        // only the added source is parsed, the rollup of the first one is extended
+        params.put("url2", notUniqueMostSpeeches);
+        ProcessingResult result = spc.processStatistics(params);
+
+        assertEquals(List.of(statistics, notUniqueMostSpeeches), readUrls);
+        assertEquals(new SpeechProcessingController().processStatistics(params), result);
+
+        // the first rollup is not changed by the extension
+        params.remove("url2");
+        params.put("from", "2012-01");
+        assertEquals(new SpeechProcessingController().processStatistics(params), spc.processStatistics(params));
+        assertEquals(2, readUrls.size());
+    }
+
+    @Test
+    public void testProcessStatistics_SpilledEstimateCapped() throws IOException {
+        // rows beyond 10 are spilled, so at most 10 rows, their rollup and the partition buffers are reserved
+        long cappedBytes = 10 * (AdmissionControl.HEAP_BYTES_PER_ROW + AdmissionControl.ROLLUP_BYTES_PER_ROW)
+            + ExternalAggregation.bufferBytes(ExternalAggregation.DEFAULT_PARTITIONS);
+        AdmissionControl admissionControl = new AdmissionControl(8_000_000L, 0, 0, 5);
+        SpeechProcessingController spc = new SpeechProcessingController(
+            new ResultCache(ResultCache.DEFAULT_TTL_MILLIS, ResultCache.DEFAULT_MAX_ENTRIES),
+            new RollupCache(RollupCache.DEFAULT_TTL_MILLIS, RollupCache.DEFAULT_MAX_BYTES, admissionControl), new EvaluationCoordinator(), admissionControl, 10);
+
+        Path file = Files.createTempFile("statistics", ".csv");
+        try {
+            // the uncapped estimate of the file exceeds the whole budget
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 40_000; i++) {
+                lines.add("Speaker " + (i % 100) + ", Coal Subsidies, " + LocalDate.of(2013, 1, 1).plusDays(i % 365) + ", " + (i + 1));
+            }
+            Files.write(file, lines);
+
+            Map<String, String> params = new HashMap<>();
+            params.put("url1", file.toUri().toString());
+
+            try (AdmissionControl.Permit permit = admissionControl.admit(8_000_000L - cappedBytes)) {
+                ProcessingResult result = spc.processStatistics(params);
+                assertEquals(new SpeechProcessingController().processStatistics(params), result);
+            }
+            assertEquals(0, admissionControl.getMetrics().getRejectedRequests());
+        } finally {
+            Files.delete(file);
+        }
+    }
 }
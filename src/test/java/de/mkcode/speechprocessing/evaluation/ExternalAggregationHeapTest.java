@@ -0,0 +1,63 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.model.StatisticsRow;
+import de.mkcode.speechprocessing.service.AdmissionControl;
+
+/**
+ * Runs in its own surefire execution with a small maximum heap (see pom.xml),
+ * so the evaluation fails with an OutOfMemoryError if it holds more than its admission estimate.
+ */
+public class ExternalAggregationHeapTest {
+
+    private static final int ROW_COUNT = 1_000_000;
+
+    private static final int MAX_ROWS_IN_MEMORY = 5_000;
+
+    /**
+     * 1.000.000 rows of 200.000 speakers, which do not fit into the heap together.
+     * Alexander Abel gave the most speeches in 2013, Bernhard Belling the most about 'internal security'
+     * and Caesare Collins spoke the fewest words. Partitions have more rows than may be held in memory,
+     * so they are split into sub partitions.
+     */
+    @Test
+    public void testEvaluate_RowsExceedingHeap() {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long evaluationBytes = MAX_ROWS_IN_MEMORY * (AdmissionControl.HEAP_BYTES_PER_ROW + AdmissionControl.ROLLUP_BYTES_PER_ROW)
+            + ExternalAggregation.bufferBytes(ExternalAggregation.DEFAULT_PARTITIONS);
+        // skipped when run without the small heap, e.g. selected with -Dtest in the default execution
+        assumeTrue(ROW_COUNT * AdmissionControl.HEAP_BYTES_PER_ROW > maxHeap, "Heap is not constrained: " + maxHeap);
+        assertTrue(evaluationBytes < maxHeap / 4);
+
+        Random random = new Random(42);
+        try (RowCollector rows = new RowCollector(MAX_ROWS_IN_MEMORY, ExternalAggregation.DEFAULT_PARTITIONS)) {
+            for (int i = 0; i < ROW_COUNT; i++) {
+                LocalDate date = LocalDate.of(2012 + random.nextInt(2), 1, 1).plusDays(random.nextInt(365));
+                if (i % 20 == 0) {
+                    rows.accept(new StatisticsRow("Alexander Abel", "Education Policy", LocalDate.of(2013, 1, 1).plusDays(i % 365), 1000 + i));
+                } else if (i % 20 == 1) {
+                    rows.accept(new StatisticsRow("Bernhard Belling", "Internal Security", LocalDate.of(2012, 1, 1).plusDays(i % 365), 1000 + i));
+                } else {
+                    rows.accept(new StatisticsRow("Speaker " + random.nextInt(200_000),
+                        random.nextBoolean() ? "Internal Security" : "Coal Subsidies", date, 100 + random.nextInt(5000)));
+                }
+            }
+            rows.accept(new StatisticsRow("Caesare Collins", "Coal Subsidies", LocalDate.of(2012, 11, 6), 1));
+            assertTrue(rows.isExternal());
+
+            ProcessingResult result = rows.evaluate();
+            assertEquals("Alexander Abel", result.getMostSpeeches());
+            assertEquals("Bernhard Belling", result.getMostSecurity());
+            assertEquals("Caesare Collins", result.getLeastWordy());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import de.mkcode.speechprocessing.model.Period;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.model.StatisticsRow;
+import de.mkcode.speechprocessing.utils.CsvUtils;
+
+public class ExternalAggregationTest {
+
+    private static final int MAX_ROWS_IN_MEMORY = 5_000;
+
+    private static Path file;
+
+    /**
+     * Generates a CSV file with 300.000 rows of 50.000 speakers, every 10th row is repeated.
+     * Alexander Abel gave the most speeches in 2013, Bernhard Belling the most about 'internal security'
+     * and Caesare Collins spoke the fewest words. Alexander Abel alone has more rows than may be held in memory.
+     */
+    @BeforeAll
+    public static void generateFile() throws IOException {
+        file = Files.createTempFile("statistics_large", ".csv");
+        Random random = new Random(42);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < 300_000; i++) {
+                String row;
+                if (i % 30 == 0) {
+                    row = "Alexander Abel, Education Policy, 2013-" + String.format("%02d-%02d", 1 + i % 12, 1 + i % 28) + ", " + (1000 + i);
+                } else if (i % 30 == 1) {
+                    row = "Bernhard Belling, Internal Security, 2012-" + String.format("%02d-%02d", 1 + i % 12, 1 + i % 28) + ", " + (1000 + i);
+                } else {
+                    row = "Speaker " + random.nextInt(50_000) + ", " + (random.nextBoolean() ? "Internal Security" : "Coal Subsidies")
+                        + ", " + LocalDate.of(2012 + random.nextInt(2), 1, 1).plusDays(random.nextInt(365)) + ", " + (100 + random.nextInt(5000));
+                }
+                writer.write(row);
+                writer.newLine();
+                if (i % 10 == 0) {
+                    writer.write(row);
+                    writer.newLine();
+                }
+            }
+            writer.write("Caesare Collins, Coal Subsidies, 2012-11-06, 1");
+            writer.newLine();
+        }
+    }
+
+    @AfterAll
+    public static void deleteFile() throws IOException {
+        Files.delete(file);
+    }
+
+    @Test
+    public void testEvaluate_SameResultAsInMemory() {
+        ProcessingResult expected;
+        try (RowCollector rows = new RowCollector(Integer.MAX_VALUE, ExternalAggregation.DEFAULT_PARTITIONS)) {
+            CsvUtils.readCsvFromUrl(file.toUri().toString(), rows);
+            assertFalse(rows.isExternal());
+            expected = rows.evaluate();
+        }
+
+        try (RowCollector rows = new RowCollector(MAX_ROWS_IN_MEMORY, 16)) {
+            CsvUtils.readCsvFromUrl(file.toUri().toString(), rows);
+            assertTrue(rows.isExternal());
+
+            ProcessingResult result = rows.evaluate();
+            assertEquals(expected, result);
+            assertEquals("Alexander Abel", result.getMostSpeeches());
+            assertEquals("Bernhard Belling", result.getMostSecurity());
+            assertEquals("Caesare Collins", result.getLeastWordy());
+        }
+    }
+
+    @Test
+    public void testEvaluate_PeriodSameResultAsInMemory() {
+        Period period = new Period(YearMonth.of(2012, 1), YearMonth.of(2012, 12));
+
+        ProcessingResult expected;
+        try (RowCollector rows = new RowCollector(Integer.MAX_VALUE, ExternalAggregation.DEFAULT_PARTITIONS)) {
+            CsvUtils.readCsvFromUrl(file.toUri().toString(), rows);
+            expected = rows.evaluate(period);
+        }
+
+        // rows in the rollup and spilled rows are counted together per partition
+        try (RowCollector rows = new RowCollector(MAX_ROWS_IN_MEMORY, 16)) {
+            CsvUtils.readCsvFromUrl(file.toUri().toString(), rows);
+            assertTrue(rows.isExternal());
+            assertEquals(MAX_ROWS_IN_MEMORY, rows.getRollupIndex().getRowCount());
+
+            ProcessingResult result = rows.evaluate(period);
+            assertEquals(expected, result);
+            assertEquals("Bernhard Belling", result.getMostSpeeches());
+        }
+    }
+
+    @Test
+    public void testEvaluate_PeakRowsInMemoryBounded() {
+        try (ExternalAggregation aggregation = new ExternalAggregation(MAX_ROWS_IN_MEMORY, 16)) {
+            int rowCount = CsvUtils.readCsvFromUrl(file.toUri().toString(), aggregation::add);
+
+            ProcessingResult result = aggregation.evaluate();
+
+            assertTrue(rowCount > 60 * MAX_ROWS_IN_MEMORY);
+            assertTrue(aggregation.getPeakRowsInMemory() <= MAX_ROWS_IN_MEMORY);
+            assertEquals("Alexander Abel", result.getMostSpeeches());
+        }
+    }
+
+    @Test
+    public void testEvaluate_DuplicatesAndTies() {
+        try (ExternalAggregation aggregation = new ExternalAggregation(1, 4)) {
+            LocalDate date = LocalDate.of(2013, 11, 5);
+            // the same row more often than may be held in memory
+            for (int i = 0; i < 10; i++) {
+                aggregation.add(new StatisticsRow("Alexander Abel", "Internal Security", date, 100));
+            }
+            aggregation.add(new StatisticsRow("Bernhard Belling", "Internal Security", date, 100));
+
+            ProcessingResult result = aggregation.evaluate();
+            assertNull(result.getMostSpeeches());
+            assertNull(result.getMostSecurity());
+            assertNull(result.getLeastWordy());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class FingerprintSetTest {
+
+    @Test
+    public void testAdd_Grow() {
+        FingerprintSet fingerprints = new FingerprintSet();
+        for (long i = 0; i < 10_000; i++) {
+            assertTrue(fingerprints.add(i * 0x9E3779B97F4A7C15L));
+        }
+        for (long i = 0; i < 10_000; i++) {
+            assertFalse(fingerprints.add(i * 0x9E3779B97F4A7C15L));
+            assertTrue(fingerprints.contains(i * 0x9E3779B97F4A7C15L));
+        }
+
+        assertEquals(10_000, fingerprints.size());
+        assertFalse(fingerprints.contains(-1));
+        assertTrue(fingerprints.getMemoryBytes() <= 4 * 10_000 * Long.BYTES);
+    }
+
+    @Test
+    public void testAdd_Zero() {
+        FingerprintSet fingerprints = new FingerprintSet();
+
+        assertTrue(fingerprints.add(0));
+
+        // 0 marks a free slot and is stored as 1
+        assertTrue(fingerprints.contains(0));
+        assertTrue(fingerprints.contains(1));
+        assertEquals(1, fingerprints.size());
+    }
+
+    @Test
+    public void testCopy_Independent() {
+        FingerprintSet fingerprints = new FingerprintSet();
+        fingerprints.add(42);
+
+        FingerprintSet copy = fingerprints.copy();
+        copy.add(43);
+
+        assertTrue(copy.contains(42));
+        assertFalse(fingerprints.contains(43));
+        assertEquals(1, fingerprints.size());
+        assertEquals(2, copy.size());
+    }
+}
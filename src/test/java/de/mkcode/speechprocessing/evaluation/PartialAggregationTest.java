@@ -0,0 +1,103 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import de.mkcode.speechprocessing.model.PartialResult;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.model.StatisticsRow;
+import de.mkcode.speechprocessing.utils.CsvUtils;
+
+public class PartialAggregationTest {
+
+    private static List<StatisticsRow> readRows(String fileName) {
+        File file = new File("src/test/resources/" + fileName);
+        return CsvUtils.readCsvFromUrl("file://" + file.getAbsolutePath());
+    }
+
+    @Test
+    public void testToBytes_RoundTrip() throws IOException {
+        PartialResult partial = PartialAggregation.createPartial(new HashSet<>(readRows("test_statistics.csv")));
+
+        PartialResult copy = PartialResult.fromBytes(partial.toBytes());
+
+        assertArrayEquals(partial.getSpeakers(), copy.getSpeakers());
+        assertArrayEquals(partial.getSpeechesCount(), copy.getSpeechesCount());
+        assertArrayEquals(partial.getSecurityCount(), copy.getSecurityCount());
+        assertArrayEquals(partial.getWordsCount(), copy.getWordsCount());
+        assertArrayEquals(partial.getFingerprints(), copy.getFingerprints());
+        assertArrayEquals(partial.getRowSpeakers(), copy.getRowSpeakers());
+        assertArrayEquals(partial.getRowFlags(), copy.getRowFlags());
+        assertArrayEquals(partial.getRowWords(), copy.getRowWords());
+    }
+
+    @Test
+    public void testMerge_DuplicatedRowsFiltered() {
+        List<StatisticsRow> statistics = readRows("test_statistics.csv");
+        List<StatisticsRow> doubleRow = readRows("test_statistics_doubleRow.csv");
+
+        PartialAggregation aggregation = new PartialAggregation();
+        aggregation.merge(PartialAggregation.createPartial(new HashSet<>(statistics)));
+        aggregation.merge(PartialAggregation.createPartial(new HashSet<>(doubleRow)));
+
+        Set<StatisticsRow> allRows = new HashSet<>(statistics);
+        allRows.addAll(doubleRow);
+        SpeakerStatistics expected = new SpeakerStatistics();
+        allRows.forEach(expected::add);
+
+        ProcessingResult result = aggregation.evaluate();
+        assertEquals(expected.evaluate(), result);
+        assertEquals("Bernhard Belling", result.getMostSpeeches());
+        assertEquals("Alexander Abel", result.getMostSecurity());
+        assertEquals("Caesare Collins", result.getLeastWordy());
+    }
+
+    @Test
+    public void testMerge_SamePartialTwice() {
+        PartialResult partial = PartialAggregation.createPartial(new HashSet<>(readRows("test_statistics_notUniqueMostSpeeches.csv")));
+
+        PartialAggregation aggregation = new PartialAggregation();
+        aggregation.merge(partial);
+        aggregation.merge(partial);
+
+        ProcessingResult result = aggregation.evaluate();
+        assertEquals(null, result.getMostSpeeches());
+        assertEquals("Alexander Abel", result.getMostSecurity());
+        assertEquals("Caesare Collins", result.getLeastWordy());
+    }
+
+    @Test
+    public void testMerge_WordsBeyondInt() throws IOException {
+        LocalDate date = LocalDate.of(2013, 11, 5);
+        List<StatisticsRow> rows = List.of(
+            new StatisticsRow("Alexander Abel", "Coal Subsidies", date, Integer.MAX_VALUE),
+            new StatisticsRow("Alexander Abel", "Education Policy", date, Integer.MAX_VALUE),
+            new StatisticsRow("Bernhard Belling", "Coal Subsidies", date, Integer.MAX_VALUE),
+            new StatisticsRow("Bernhard Belling", "Education Policy", date, Integer.MAX_VALUE),
+            new StatisticsRow("Bernhard Belling", "Internal Security", date, 10));
+
+        PartialAggregation aggregation = new PartialAggregation();
+        aggregation.merge(PartialResult.fromBytes(PartialAggregation.createPartial(rows).toBytes()));
+        aggregation.merge(PartialResult.fromBytes(PartialAggregation.createPartial(rows.subList(0, 2)).toBytes()));
+
+        assertEquals("Alexander Abel", aggregation.evaluate().getLeastWordy());
+    }
+
+    @Test
+    public void testFingerprint_DifferentRows() {
+        List<StatisticsRow> rows = readRows("test_statistics.csv");
+
+        assertEquals(PartialAggregation.fingerprint(rows.get(0)), PartialAggregation.fingerprint(readRows("test_statistics.csv").get(0)));
+        assertNotEquals(PartialAggregation.fingerprint(rows.get(0)), PartialAggregation.fingerprint(rows.get(3)));
+    }
+}
@@ -0,0 +1,222 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import de.mkcode.speechprocessing.model.Period;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.model.StatisticsRow;
+import de.mkcode.speechprocessing.service.AdmissionControl;
+
+public class RollupIndexTest {
+
+    private static final String[] TOPICS = { "Internal Security", "Coal Subsidies", "Education Policy" };
+
+    private static List<StatisticsRow> randomRows(Random random, int count) {
+        Set<StatisticsRow> rows = new HashSet<>();
+        while (rows.size() < count) {
+            rows.add(new StatisticsRow("Speaker " + random.nextInt(20), TOPICS[random.nextInt(TOPICS.length)],
+                LocalDate.of(2008, 1, 1).plusDays(random.nextInt(3650)), random.nextInt(5000)));
+        }
+        return new ArrayList<>(rows);
+    }
+
+    private static ProcessingResult scan(List<StatisticsRow> rows, Period period) {
+        try (SpeakerStatistics statistics = new SpeakerStatistics()) {
+            for (StatisticsRow row : rows) {
+                statistics.add(row.getSpeaker(), SpeakerStatistics.isSpeechIn(row, period) ? 1 : 0,
+                    SpeakerStatistics.isSecuritySpeech(row) ? 1 : 0, SpeakerStatistics.countedWords(row));
+            }
+            return statistics.evaluate();
+        }
+    }
+
+    @Test
+    public void testRangeQueries_EqualToScan() {
+        Random random = new Random(42);
+        List<StatisticsRow> rows = randomRows(random, 5000);
+
+        RollupIndex index = new RollupIndex();
+        rows.forEach(index::add);
+
+        for (int i = 0; i < 200; i++) {
+            YearMonth from = YearMonth.of(2007, 1).plusMonths(random.nextInt(144));
+            Period period = new Period(from, from.plusMonths(random.nextInt(24)));
+            String speaker = "Speaker " + random.nextInt(20);
+            String topic = TOPICS[random.nextInt(TOPICS.length)];
+
+            long speeches = rows.stream().filter(r -> r.getSpeaker().equals(speaker) && period.contains(r.getDate())).count();
+            long topicSpeeches = rows.stream()
+                .filter(r -> r.getSpeaker().equals(speaker) && r.getTopic().equals(topic) && period.contains(r.getDate())).count();
+            long words = rows.stream().filter(r -> r.getSpeaker().equals(speaker) && period.contains(r.getDate()))
+                .mapToLong(SpeakerStatistics::countedWords).sum();
+
+            assertEquals(speeches, index.speeches(speaker, period));
+            assertEquals(topicSpeeches, index.speeches(speaker, topic.toLowerCase(), period));
+            assertEquals(words, index.words(speaker, period));
+        }
+    }
+
+    @Test
+    public void testEvaluate_EqualToScan() {
+        Random random = new Random(7);
+        List<StatisticsRow> rows = randomRows(random, 2000);
+
+        RollupIndex index = new RollupIndex();
+        rows.forEach(index::add);
+
+        assertEquals(scan(rows, Period.YEAR_2013), index.evaluate(Period.YEAR_2013));
+        Period period = new Period(YearMonth.of(2010, 3), YearMonth.of(2011, 8));
+        assertEquals(scan(rows, period), index.evaluate(period));
+        period = new Period(Period.OPEN_FROM, YearMonth.of(2009, 1));
+        assertEquals(scan(rows, period), index.evaluate(period));
+    }
+
+    @Test
+    public void testAdd_AfterQuery() {
+        RollupIndex index = new RollupIndex();
+        index.add(new StatisticsRow("Alexander Abel", "Internal Security", LocalDate.of(2013, 5, 1), 100));
+
+        Period period = new Period(YearMonth.of(2012, 1), YearMonth.of(2014, 12));
+        assertEquals(1, index.speeches("Alexander Abel", period));
+
+        // months before and after the known months are added to the series
+        index.add(new StatisticsRow("Alexander Abel", "Coal Subsidies", LocalDate.of(2012, 2, 1), 50));
+        index.add(new StatisticsRow("Alexander Abel", "Coal Subsidies", LocalDate.of(2014, 11, 1), 25));
+        index.add(new StatisticsRow("Alexander Abel", "Coal Subsidies", LocalDate.of(2015, 1, 1), 10));
+
+        assertEquals(3, index.speeches("Alexander Abel", period));
+        assertEquals(175, index.words("Alexander Abel", period));
+        assertEquals(2, index.speeches("Alexander Abel", "coal subsidies", period));
+        assertEquals(1, index.speeches("Alexander Abel", "internal security", period));
+        assertEquals(0, index.speeches("Bernhard Belling", period));
+        assertEquals(0, index.speeches("Alexander Abel", new Period(YearMonth.of(2000, 1), YearMonth.of(2011, 12))));
+    }
+
+    @Test
+    public void testAdd_SparseMonths() {
+        RollupIndex index = new RollupIndex();
+        index.add(new StatisticsRow("Alexander Abel", "Internal Security", LocalDate.of(1, 1, 1), 100));
+        index.add(new StatisticsRow("Alexander Abel", "Coal Subsidies", LocalDate.of(2013, 5, 1), 50));
+
+        assertEquals(2, index.speeches("Alexander Abel", new Period(Period.OPEN_FROM, Period.OPEN_TO)));
+        assertEquals(1, index.speeches("Alexander Abel", Period.YEAR_2013));
+        assertEquals(100, index.words("Alexander Abel", new Period(YearMonth.of(1, 1), YearMonth.of(2012, 12))));
+    }
+
+    @Test
+    public void testAdd_DuplicateFiltered() {
+        RollupIndex index = new RollupIndex();
+        StatisticsRow row = new StatisticsRow("Alexander Abel", "Internal Security", LocalDate.of(2013, 5, 1), 100);
+
+        assertTrue(index.add(row));
+        assertFalse(index.add(new StatisticsRow("Alexander Abel", "Internal Security", LocalDate.of(2013, 5, 1), 100)));
+        assertTrue(index.contains(row));
+        assertEquals(1, index.getRowCount());
+        assertEquals(1, index.speeches("Alexander Abel", Period.YEAR_2013));
+    }
+
+    @Test
+    public void testAdd_RowsDifferingInOneFieldNotFiltered() {
+        RollupIndex index = new RollupIndex();
+        LocalDate date = LocalDate.of(2013, 5, 1);
+        index.add(new StatisticsRow("Alexander Abel", "Internal Security", date, 100));
+
+        // rows are compared completely, rows differing in the case of the topic are different rows
+        assertFalse(index.contains(new StatisticsRow("Alexander Abel", "internal security", date, 100)));
+        assertFalse(index.contains(new StatisticsRow("Bernhard Belling", "Internal Security", date, 100)));
+        assertFalse(index.contains(new StatisticsRow("Alexander Abel", "Internal Security", date.plusDays(1), 100)));
+        assertFalse(index.contains(new StatisticsRow("Alexander Abel", "Internal Security", date, 101)));
+
+        assertTrue(index.add(new StatisticsRow("Alexander Abel", "internal security", date, 100)));
+        assertEquals(2, index.getRowCount());
+        assertEquals(2, index.speeches("Alexander Abel", "internal security", Period.YEAR_2013));
+    }
+
+    @Test
+    public void testAdd_ManyRowsExactlyDeduplicated() {
+        Random random = new Random(3);
+        List<StatisticsRow> rows = randomRows(random, 50_000);
+
+        try (RollupIndex index = new RollupIndex()) {
+            rows.forEach(row -> assertTrue(index.add(row)));
+            rows.forEach(row -> assertFalse(index.add(row)));
+            assertEquals(rows.size(), index.getRowCount());
+        }
+    }
+
+    @Test
+    public void testClose_FreedAfterLastUser() {
+        RollupIndex index = new RollupIndex();
+        index.add(new StatisticsRow("Alexander Abel", "Internal Security", LocalDate.of(2013, 5, 1), 100));
+
+        index.retain();
+        index.close();
+        // still used by the second user
+        assertEquals(1, index.speeches("Alexander Abel", Period.YEAR_2013));
+
+        index.close();
+        assertThrows(IllegalStateException.class, index::retain);
+    }
+
+    @Test
+    public void testGetMemoryBytes_WithinEstimatePerRow() {
+        // worst case for the index: every row has another speaker and topic
+        for (int rows : new int[] { 100, 1000, 10_000, 100_000, 200_000 }) {
+            try (RollupIndex index = new RollupIndex()) {
+                for (int i = 0; i < rows; i++) {
+                    index.add(new StatisticsRow("Speaker " + i, "Topic " + i, LocalDate.of(2008, 1, 1).plusDays(i % 3650), i));
+                }
+                index.evaluate(Period.YEAR_2013);
+
+                long memoryBytes = index.getMemoryBytes();
+                assertTrue(memoryBytes <= rows * AdmissionControl.ROLLUP_BYTES_PER_ROW,
+                    rows + " rows need " + memoryBytes + " bytes");
+            }
+        }
+    }
+
+    @Test
+    public void testEvaluate_WordsBeyondInt() {
+        RollupIndex index = new RollupIndex();
+        LocalDate date = LocalDate.of(2013, 11, 5);
+        index.add(new StatisticsRow("Alexander Abel", "Coal Subsidies", date, Integer.MAX_VALUE));
+        index.add(new StatisticsRow("Alexander Abel", "Education Policy", date, Integer.MAX_VALUE));
+        index.add(new StatisticsRow("Bernhard Belling", "Coal Subsidies", date, Integer.MAX_VALUE));
+        index.add(new StatisticsRow("Bernhard Belling", "Education Policy", date, Integer.MAX_VALUE));
+        index.add(new StatisticsRow("Bernhard Belling", "Internal Security", date, 10));
+
+        assertEquals(2L * Integer.MAX_VALUE, index.words("Alexander Abel", Period.YEAR_2013));
+        assertEquals("Alexander Abel", index.evaluate(Period.YEAR_2013).getLeastWordy());
+    }
+
+    @Test
+    public void testCopy_Independent() {
+        try (RollupIndex index = new RollupIndex()) {
+            index.add(new StatisticsRow("Alexander Abel", "Internal Security", LocalDate.of(2013, 5, 1), 100));
+
+            try (RollupIndex copy = index.copy()) {
+                copy.add(new StatisticsRow("Alexander Abel", "Internal Security", LocalDate.of(2013, 6, 1), 100));
+                copy.add(new StatisticsRow("Bernhard Belling", "Coal Subsidies", LocalDate.of(2013, 6, 1), 100));
+
+                assertEquals(1, index.getRowCount());
+                assertEquals(1, index.speeches("Alexander Abel", Period.YEAR_2013));
+                assertEquals(0, index.speeches("Bernhard Belling", Period.YEAR_2013));
+                assertEquals(3, copy.getRowCount());
+                assertEquals(2, copy.speeches("Alexander Abel", "internal security", Period.YEAR_2013));
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package de.mkcode.speechprocessing.evaluation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import de.mkcode.speechprocessing.model.ProcessingResult;
+
+public class SpeakerTableTest {
+
+    @Test
+    public void testAdd_Grow() {
+        Map<String, Long> expectedWords = new HashMap<>();
+
+        try (SpeakerTable table = new SpeakerTable(16)) {
+            // enough speakers to grow slots and names several times
+            for (int i = 0; i < 100_000; i++) {
+                String speaker = "Speaker " + (i % 20_000);
+                table.add(speaker, i % 2, i % 3 == 0 ? 1 : 0, i);
+                expectedWords.merge(speaker, (long) i, Long::sum);
+            }
+
+            assertEquals(20_000, table.size());
+
+            Map<String, Long> words = new HashMap<>();
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.isUsed(slot)) {
+                    words.put(table.speaker(slot), table.words(slot));
+                }
+            }
+            assertEquals(expectedWords, words);
+        }
+    }
+
+    @Test
+    public void testInsert_IdsStableWhileGrowing() {
+        try (SpeakerTable table = new SpeakerTable(16)) {
+            for (int i = 0; i < 1000; i++) {
+                table.insert("Speaker " + i);
+            }
+            // inserting a known speaker finds its slot
+            assertEquals(table.find("Speaker 0"), table.insert("Speaker 0"));
+
+            for (int i = 0; i < 1000; i++) {
+                int slot = table.find("Speaker " + i);
+                assertEquals(i, table.id(slot));
+                assertEquals(("Speaker " + i).hashCode(), table.nameHashCode(slot));
+                assertEquals(0, table.speeches(slot));
+            }
+            assertEquals(-1, table.find("Speaker 1000"));
+            assertEquals(1000, table.size());
+
+            try (SpeakerTable copy = table.copy()) {
+                copy.insert("Speaker 1000");
+                assertEquals(999, copy.id(copy.find("Speaker 999")));
+                assertEquals(1000, copy.id(copy.find("Speaker 1000")));
+                assertEquals(-1, table.find("Speaker 1000"));
+            }
+        }
+    }
+
+    @Test
+    public void testAdd_SameHashDifferentName() {
+        // "Aa" and "BB" have the same String hash code
+        try (SpeakerTable table = new SpeakerTable()) {
+            table.add("Aa", 1, 0, 10);
+            table.add("BB", 2, 0, 20);
+            table.add("Aa", 1, 1, 10);
+
+            assertEquals(2, table.size());
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.isUsed(slot) && table.speaker(slot).equals("Aa")) {
+                    assertEquals(2, table.speeches(slot));
+                    assertEquals(1, table.security(slot));
+                    assertEquals(20, table.words(slot));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEvaluate_SingleSpeaker() {
+        try (SpeakerStatistics statistics = new SpeakerStatistics()) {
+            statistics.add("Alexander Abel", 1, 1, 5310);
+
+            ProcessingResult result = statistics.evaluate();
+            assertEquals("Alexander Abel", result.getMostSpeeches());
+            assertEquals("Alexander Abel", result.getMostSecurity());
+            assertEquals("Alexander Abel", result.getLeastWordy());
+        }
+    }
+
+    @Test
+    public void testEvaluate_WordsBeyondInt() {
+        try (SpeakerStatistics statistics = new SpeakerStatistics()) {
+            statistics.add("Alexander Abel", 0, 0, Integer.MAX_VALUE);
+            statistics.add("Alexander Abel", 0, 0, Integer.MAX_VALUE);
+            statistics.add("Bernhard Belling", 0, 0, Integer.MAX_VALUE);
+            statistics.add("Bernhard Belling", 0, 0, Integer.MAX_VALUE);
+            statistics.add("Bernhard Belling", 0, 0, 10);
+
+            // an int counter would overflow to a negative value and skip Alexander Abel
+            assertEquals("Alexander Abel", statistics.evaluate().getLeastWordy());
+        }
+    }
+
+    @Test
+    public void testEvaluate_CountersTakenBack() {
+        try (SpeakerStatistics statistics = new SpeakerStatistics()) {
+            statistics.add("Alexander Abel", 1, 1, 5310);
+            statistics.add("Bernhard Belling", 1, 1, 1210);
+            statistics.add("Bernhard Belling", -1, -1, -1210);
+
+            // Bernhard Belling has no counted rows left
+            ProcessingResult result = statistics.evaluate();
+            assertEquals("Alexander Abel", result.getMostSpeeches());
+            assertEquals("Alexander Abel", result.getMostSecurity());
+            assertEquals("Alexander Abel", result.getLeastWordy());
+
+            statistics.add("Caesare Collins", 1, 0, 5310);
+            result = statistics.evaluate();
+            assertNull(result.getMostSpeeches());
+            assertNull(result.getLeastWordy());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package de.mkcode.speechprocessing.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import de.mkcode.speechprocessing.model.AdmissionMetrics;
+import de.mkcode.speechprocessing.model.SourceMetadata;
+
+public class AdmissionControlTest {
+
+    private static void awaitQueueLength(AdmissionControl admissionControl, int queueLength) throws InterruptedException {
+        for (int i = 0; i < 500 && admissionControl.getMetrics().getQueueLength() != queueLength; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(queueLength, admissionControl.getMetrics().getQueueLength());
+    }
+
+    @Test
+    public void testAdmit_QueuedUntilReleased() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(1000L, 1, 10_000, 5);
+
+        AdmissionControl.Permit first = admissionControl.admit(800);
+
+        // second evaluation does not fit into the remaining budget
+        CompletableFuture<AdmissionControl.Permit> second = CompletableFuture.supplyAsync(() -> admissionControl.admit(400));
+        awaitQueueLength(admissionControl, 1);
+        assertFalse(second.isDone());
+
+        // queue is full
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class, () -> admissionControl.admit(100));
+        assertEquals(5, e.getRetryAfterSeconds());
+
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+
+        AdmissionMetrics metrics = admissionControl.getMetrics();
+        assertEquals(2, metrics.getAdmittedRequests());
+        assertEquals(1, metrics.getRejectedRequests());
+        assertEquals(0, metrics.getRunningRequests());
+        assertEquals(0, metrics.getQueueLength());
+        assertEquals(0, metrics.getAdmittedBytes());
+    }
+
+    @Test
+    public void testAdmitAdditional_NotQueuedBehindWaitingEvaluations() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(1000L, 1, 10_000, 5);
+
+        try (AdmissionControl.Permit first = admissionControl.admit(800)) {
+            // second evaluation waits for the budget of the first one
+            CompletableFuture<AdmissionControl.Permit> second = CompletableFuture.supplyAsync(() -> admissionControl.admit(400));
+            awaitQueueLength(admissionControl, 1);
+
+            // the first evaluation gets its additional memory without waiting behind the second one
+            try (AdmissionControl.Permit additional = admissionControl.admitAdditional(first, 5000)) {
+                assertEquals(1000, admissionControl.getMetrics().getAdmittedBytes());
+                assertEquals(1, admissionControl.getMetrics().getRunningRequests());
+            }
+            assertFalse(second.isDone());
+
+            first.close();
+            second.get(5, TimeUnit.SECONDS).close();
+        }
+
+        AdmissionMetrics metrics = admissionControl.getMetrics();
+        assertEquals(2, metrics.getAdmittedRequests());
+        assertEquals(0, metrics.getRunningRequests());
+        assertEquals(0, metrics.getAdmittedBytes());
+    }
+
+    @Test
+    public void testAdmit_WaitingTimeExceeded() {
+        AdmissionControl admissionControl = new AdmissionControl(1000L, 1, 50, 5);
+
+        try (AdmissionControl.Permit permit = admissionControl.admit(1000)) {
+            assertThrows(AdmissionRejectedException.class, () -> admissionControl.admit(1));
+        }
+
+        assertEquals(0, admissionControl.getMetrics().getQueueLength());
+        assertEquals(1, admissionControl.getMetrics().getRejectedRequests());
+    }
+
+    @Test
+    public void testAdmit_LargerThanBudget() {
+        AdmissionControl admissionControl = new AdmissionControl(1000L, 1, 10_000, 5);
+
+        // admitted alone, although the estimate exceeds the whole budget
+        try (AdmissionControl.Permit permit = admissionControl.admit(5000)) {
+            assertEquals(1000, admissionControl.getMetrics().getAdmittedBytes());
+        }
+    }
+
+    @Test
+    public void testEstimate_BytesPerRowLearned() {
+        AdmissionControl admissionControl = new AdmissionControl(1000L, 1, 10_000, 5);
+
+        File file = new File("src/test/resources/test_statistics.csv");
+        String url = "file://" + file.getAbsolutePath();
+        Map<String, SourceMetadata> metadataByUrl = new HashMap<>();
+
+        long initialEstimate = admissionControl.estimate(List.of(url), metadataByUrl);
+        assertEquals((long) (file.length() / AdmissionControl.INITIAL_BYTES_PER_ROW) * AdmissionControl.HEAP_BYTES_PER_ROW, initialEstimate);
+
+        // rows of the file are larger than assumed, so fewer rows are estimated
+        admissionControl.recordSource(new SourceMetadata(url, null, 1, 4000), 10);
+        assertTrue(admissionControl.getMetrics().getBytesPerRow() > AdmissionControl.INITIAL_BYTES_PER_ROW);
+        assertTrue(admissionControl.estimate(List.of(url), metadataByUrl) < initialEstimate);
+    }
+}
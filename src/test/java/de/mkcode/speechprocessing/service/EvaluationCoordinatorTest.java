@@ -0,0 +1,281 @@
+package de.mkcode.speechprocessing.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.sun.net.httpserver.HttpServer;
+
+import de.mkcode.speechprocessing.SpeechprocessingApplication;
+import de.mkcode.speechprocessing.evaluation.ExternalAggregation;
+import de.mkcode.speechprocessing.evaluation.PartialAggregation;
+import de.mkcode.speechprocessing.evaluation.RowCollector;
+import de.mkcode.speechprocessing.model.Period;
+import de.mkcode.speechprocessing.model.ProcessingResult;
+import de.mkcode.speechprocessing.utils.CsvUtils;
+
+public class EvaluationCoordinatorTest {
+
+    // Port without running instance, simulates a failed worker
+    private static final String FAILED_WORKER = "http://localhost:1";
+
+    private static ConfigurableApplicationContext worker1;
+
+    private static ConfigurableApplicationContext worker2;
+
+    @BeforeAll
+    public static void startWorkers() {
+        worker1 = new SpringApplicationBuilder(SpeechprocessingApplication.class).run("--server.port=0");
+        worker2 = new SpringApplicationBuilder(SpeechprocessingApplication.class).run("--server.port=0");
+    }
+
+    @AfterAll
+    public static void stopWorkers() {
+        worker1.close();
+        worker2.close();
+    }
+
+    private static String workerUrl(ConfigurableApplicationContext worker) {
+        return "http://localhost:" + worker.getEnvironment().getProperty("local.server.port");
+    }
+
+    private static String fileUrl(String fileName) {
+        return "file://" + new File("src/test/resources/" + fileName).getAbsolutePath();
+    }
+
+    @Test
+    public void testEvaluate_Successful() {
+        EvaluationCoordinator coordinator = new EvaluationCoordinator(List.of(workerUrl(worker1), workerUrl(worker2)), 10_000, new AdmissionControl());
+        try {
+            assertTrue(coordinator.isEnabled());
+
+            // the doubled row is contained in both files, which are evaluated on different workers
+            ProcessingResult result = coordinator.evaluate(List.of(fileUrl("test_statistics.csv"), fileUrl("test_statistics_doubleRow.csv")));
+
+            assertEquals("Bernhard Belling", result.getMostSpeeches());
+            assertEquals("Alexander Abel", result.getMostSecurity());
+            assertEquals("Caesare Collins", result.getLeastWordy());
+        } finally {
+            coordinator.shutdown();
+        }
+    }
+
+    @Test
+    public void testEvaluate_FailedWorkerReassigned() {
+        EvaluationCoordinator coordinator = new EvaluationCoordinator(List.of(FAILED_WORKER, workerUrl(worker1), FAILED_WORKER), 10_000, new AdmissionControl());
+        try {
+            ProcessingResult result = coordinator.evaluate(List.of(
+                fileUrl("test_statistics.csv"),
+                fileUrl("test_statistics_notUniqueMostSecurity.csv"),
+                fileUrl("test_statistics_doubleRow.csv")));
+
+            // Caesare Collins' speech about 'internal security' adds to his words
+            assertEquals("Bernhard Belling", result.getMostSpeeches());
+            assertEquals(null, result.getMostSecurity());
+            assertEquals("Bernhard Belling", result.getLeastWordy());
+        } finally {
+            coordinator.shutdown();
+        }
+    }
+
+    @Test
+    public void testEvaluate_AllWorkersFailed() {
+        EvaluationCoordinator coordinator = new EvaluationCoordinator(List.of(FAILED_WORKER), 10_000, new AdmissionControl());
+        try {
+            ProcessingResult result = coordinator.evaluate(List.of(fileUrl("test_statistics_notUniqueLeastWordy.csv")));
+
+            assertEquals("Bernhard Belling", result.getMostSpeeches());
+            assertEquals("Alexander Abel", result.getMostSecurity());
+            assertEquals(null, result.getLeastWordy());
+        } finally {
+            coordinator.shutdown();
+        }
+    }
+
+    @Test
+    public void testEvaluate_UnreadSourceReported() {
+        EvaluationCoordinator coordinator = new EvaluationCoordinator(List.of(workerUrl(worker1)), 10_000, new AdmissionControl());
+        try {
+            // the worker answers 502 for the missing file, it cannot be read locally either
+            Set<String> unreadUrls = new HashSet<>();
+            ProcessingResult result = coordinator.evaluate(List.of(fileUrl("test_statistics.csv"), fileUrl("missing.csv")),
+                Period.YEAR_2013, new HashMap<>(), unreadUrls);
+
+            assertEquals(Set.of(fileUrl("missing.csv")), unreadUrls);
+            assertEquals("Bernhard Belling", result.getMostSpeeches());
+        } finally {
+            coordinator.shutdown();
+        }
+    }
+
+    @Test
+    public void testEvaluate_OpenPeriod() {
+        List<String> urls = List.of(fileUrl("test_statistics.csv"), fileUrl("test_statistics_doubleRow.csv"));
+        List<Period> periods = List.of(new Period(YearMonth.of(2012, 11), Period.OPEN_TO),
+            new Period(Period.OPEN_FROM, YearMonth.of(2012, 12)), new Period(Period.OPEN_FROM, Period.OPEN_TO));
+
+        EvaluationCoordinator coordinator = new EvaluationCoordinator(List.of(workerUrl(worker1), workerUrl(worker2)), 10_000, new AdmissionControl());
+        try {
+            for (Period period : periods) {
+                ProcessingResult expected;
+                try (RowCollector rows = new RowCollector(Integer.MAX_VALUE, ExternalAggregation.DEFAULT_PARTITIONS)) {
+                    urls.forEach(url -> CsvUtils.readCsvFromUrl(url, rows));
+                    expected = rows.evaluate(period);
+                }
+
+                // the workers accept the open bounds instead of rejecting the request
+                assertEquals(expected, coordinator.evaluate(urls, period, new HashMap<>(), new HashSet<>()));
+            }
+        } finally {
+            coordinator.shutdown();
+        }
+    }
+
+    @Test
+    public void testEvaluate_BusyWorkerAskedAgain() throws IOException {
+        // worker answers 503 to the first request and the partial result to the second
+        AtomicInteger requests = new AtomicInteger();
+        byte[] partial = PartialAggregation.createPartial(new HashSet<>(CsvUtils.readCsvFromUrl(fileUrl("test_statistics.csv")))).toBytes();
+        HttpServer busyWorker = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        busyWorker.createContext("/evaluation/partial", exchange -> {
+            if (requests.incrementAndGet() == 1) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(503, -1);
+            } else {
+                exchange.sendResponseHeaders(200, partial.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(partial);
+                }
+            }
+            exchange.close();
+        });
+        busyWorker.start();
+
+        EvaluationCoordinator coordinator = new EvaluationCoordinator(
+            List.of("http://localhost:" + busyWorker.getAddress().getPort()), 10_000, new AdmissionControl());
+        try {
+            ProcessingResult result = coordinator.evaluate(List.of(fileUrl("test_statistics.csv")));
+
+            // not reassigned or evaluated locally
+            assertEquals(2, requests.get());
+            assertEquals("Bernhard Belling", result.getMostSpeeches());
+            assertEquals("Alexander Abel", result.getMostSecurity());
+            assertEquals("Caesare Collins", result.getLeastWordy());
+        } finally {
+            coordinator.shutdown();
+            busyWorker.stop(0);
+        }
+    }
+
+    @Test
+    public void testEvaluate_ClientErrorNotReassigned() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer rejectingWorker = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        rejectingWorker.createContext("/evaluation/partial", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+        });
+        rejectingWorker.start();
+
+        EvaluationCoordinator coordinator = new EvaluationCoordinator(
+            List.of("http://localhost:" + rejectingWorker.getAddress().getPort(), workerUrl(worker1)), 10_000, new AdmissionControl());
+        try {
+            ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> coordinator.evaluate(List.of(fileUrl("test_statistics.csv"))));
+
+            // neither reassigned nor evaluated locally
+            assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+            assertEquals(1, requests.get());
+        } finally {
+            coordinator.shutdown();
+            rejectingWorker.stop(0);
+        }
+    }
+
+    @Test
+    public void testEvaluate_UrlsStrictlyEncoded() throws IOException {
+        String url = "file:///data/statistics+2013 & more.csv?x=1";
+        AtomicReference<String> receivedUrl = new AtomicReference<>();
+        byte[] partial = PartialAggregation.createPartial(new HashSet<>(CsvUtils.readCsvFromUrl(fileUrl("test_statistics.csv")))).toBytes();
+        HttpServer worker = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        worker.createContext("/evaluation/partial", exchange -> {
+            // decoded like a servlet container decodes query parameters
+            for (String parameter : exchange.getRequestURI().getRawQuery().split("&")) {
+                if (parameter.startsWith("url1=")) {
+                    receivedUrl.set(URLDecoder.decode(parameter.substring("url1=".length()), StandardCharsets.UTF_8));
+                }
+            }
+            exchange.sendResponseHeaders(200, partial.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(partial);
+            }
+            exchange.close();
+        });
+        worker.start();
+
+        EvaluationCoordinator coordinator = new EvaluationCoordinator(
+            List.of("http://localhost:" + worker.getAddress().getPort()), 10_000, new AdmissionControl());
+        try {
+            ProcessingResult result = coordinator.evaluate(List.of(url));
+
+            assertEquals(url, receivedUrl.get());
+            assertEquals("Bernhard Belling", result.getMostSpeeches());
+        } finally {
+            coordinator.shutdown();
+            worker.stop(0);
+        }
+    }
+
+    @Test
+    public void testEvaluate_LocalFallbackAdmitted() {
+        // budget left for merging the fingerprints, but not for loading the file locally
+        AdmissionControl admissionControl = new AdmissionControl(10_000L, 0, 50, 5);
+        EvaluationCoordinator coordinator = new EvaluationCoordinator(List.of(FAILED_WORKER), 10_000, admissionControl);
+        try (AdmissionControl.Permit permit = admissionControl.admit(9_000)) {
+            assertThrows(AdmissionRejectedException.class, () -> coordinator.evaluate(List.of(fileUrl("test_statistics.csv"))));
+            assertEquals(1, admissionControl.getMetrics().getRejectedRequests());
+        } finally {
+            coordinator.shutdown();
+        }
+
+        // admitted once the budget is released
+        EvaluationCoordinator admittedCoordinator = new EvaluationCoordinator(List.of(FAILED_WORKER), 10_000, admissionControl);
+        try {
+            ProcessingResult result = admittedCoordinator.evaluate(List.of(fileUrl("test_statistics.csv")));
+            assertEquals("Bernhard Belling", result.getMostSpeeches());
+            assertEquals(0, admissionControl.getMetrics().getAdmittedBytes());
+        } finally {
+            admittedCoordinator.shutdown();
+        }
+    }
+
+    @Test
+    public void testIsEnabled_WithoutWorkers() {
+        assertFalse(new EvaluationCoordinator().isEnabled());
+        assertFalse(new EvaluationCoordinator(List.of(" "), 10_000, new AdmissionControl()).isEnabled());
+    }
+}
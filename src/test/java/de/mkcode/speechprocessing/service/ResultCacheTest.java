@@ -0,0 +1,57 @@
+package de.mkcode.speechprocessing.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import de.mkcode.speechprocessing.model.ProcessingResult;
+
+public class ResultCacheTest {
+
+    @Test
+    public void testGet_Successful() {
+        ResultCache cache = new ResultCache(1000, 10);
+        ProcessingResult result = new ProcessingResult("Alexander Abel", null, null);
+
+        cache.put("\"a\"", result);
+
+        assertSame(result, cache.get("\"a\""));
+        assertNull(cache.get("\"b\""));
+    }
+
+    @Test
+    public void testGet_Expired() {
+        AtomicLong clock = new AtomicLong(0);
+        ResultCache cache = new ResultCache(1000, 10, clock::get);
+
+        cache.put("\"a\"", new ProcessingResult("Alexander Abel", null, null));
+
+        clock.set(999);
+        assertEquals("Alexander Abel", cache.get("\"a\"").getMostSpeeches());
+
+        clock.set(1000);
+        assertNull(cache.get("\"a\""));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testPut_LeastRecentlyUsedEvicted() {
+        ResultCache cache = new ResultCache(1000, 2);
+
+        cache.put("\"a\"", new ProcessingResult("Alexander Abel", null, null));
+        cache.put("\"b\"", new ProcessingResult("Bernhard Belling", null, null));
+
+        // access 'a', so 'b' is the least recently used entry
+        cache.get("\"a\"");
+        cache.put("\"c\"", new ProcessingResult("Caesare Collins", null, null));
+
+        assertEquals(2, cache.size());
+        assertEquals("Alexander Abel", cache.get("\"a\"").getMostSpeeches());
+        assertNull(cache.get("\"b\""));
+        assertEquals("Caesare Collins", cache.get("\"c\"").getMostSpeeches());
+    }
+}
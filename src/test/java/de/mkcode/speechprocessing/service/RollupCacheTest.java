@@ -0,0 +1,145 @@
+package de.mkcode.speechprocessing.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import de.mkcode.speechprocessing.evaluation.RollupIndex;
+import de.mkcode.speechprocessing.model.Period;
+import de.mkcode.speechprocessing.model.StatisticsRow;
+
+public class RollupCacheTest {
+
+    private static RollupIndex indexWithRows(int rows) {
+        RollupIndex index = new RollupIndex();
+        for (int i = 0; i < rows; i++) {
+            index.add(new StatisticsRow("Alexander Abel", "Coal Subsidies", LocalDate.of(2013, 1, 1).plusDays(i), 100));
+        }
+        return index;
+    }
+
+    /**
+     * Puts the index into the cache and closes it for the caller, like the controller does.
+     */
+    private static void put(RollupCache cache, String key, RollupIndex index) {
+        try (index) {
+            cache.put(key, index);
+        }
+    }
+
+    @Test
+    public void testGet_Successful() {
+        AdmissionControl admissionControl = new AdmissionControl(1_000_000L, 0, 0, 5);
+        RollupCache cache = new RollupCache(1000, 1_000_000L, admissionControl);
+        RollupIndex index = indexWithRows(2);
+        long indexBytes = index.getMemoryBytes();
+
+        put(cache, "a", index);
+
+        try (RollupIndex cached = cache.get("a")) {
+            assertSame(index, cached);
+            assertEquals(2, cached.getRowCount());
+        }
+        assertNull(cache.get("b"));
+        assertEquals(indexBytes, cache.getMemoryBytes());
+        // the cached index is reserved from the admission budget
+        assertEquals(indexBytes, admissionControl.getMetrics().getAdmittedBytes());
+        assertEquals(0, admissionControl.getMetrics().getRunningRequests());
+    }
+
+    @Test
+    public void testGet_Expired() {
+        AtomicLong clock = new AtomicLong(0);
+        AdmissionControl admissionControl = new AdmissionControl(1_000_000L, 0, 0, 5);
+        RollupCache cache = new RollupCache(1000, 1_000_000L, admissionControl, clock::get);
+
+        RollupIndex index = indexWithRows(2);
+        put(cache, "a", index);
+
+        clock.set(999);
+        try (RollupIndex cached = cache.get("a")) {
+            assertEquals(2, cached.getRowCount());
+        }
+
+        clock.set(1000);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMemoryBytes());
+        assertEquals(0, admissionControl.getMetrics().getAdmittedBytes());
+        // the index is freed after the cache released it
+        assertThrows(IllegalStateException.class, index::retain);
+    }
+
+    @Test
+    public void testPut_LeastRecentlyUsedEvictedByBytes() {
+        long indexBytes = indexWithRows(4).getMemoryBytes();
+        AdmissionControl admissionControl = new AdmissionControl(1_000_000L, 0, 0, 5);
+        RollupCache cache = new RollupCache(1000, 2 * indexBytes, admissionControl);
+
+        put(cache, "a", indexWithRows(4));
+        put(cache, "b", indexWithRows(4));
+
+        // access 'a', so 'b' is the least recently used entry
+        cache.get("a").close();
+        put(cache, "c", indexWithRows(4));
+
+        assertEquals(2, cache.size());
+        assertEquals(2 * indexBytes, cache.getMemoryBytes());
+        assertEquals(2 * indexBytes, admissionControl.getMetrics().getAdmittedBytes());
+        assertNull(cache.get("b"));
+
+        // an index with more memory than the maximum is not cached
+        put(cache, "d", indexWithRows(10_000));
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testPut_EvictedIndexUsableWhileRetained() {
+        long indexBytes = indexWithRows(1).getMemoryBytes();
+        AdmissionControl admissionControl = new AdmissionControl(1_000_000L, 0, 0, 5);
+        RollupCache cache = new RollupCache(1000, indexBytes, admissionControl);
+
+        put(cache, "a", indexWithRows(1));
+        try (RollupIndex cached = cache.get("a")) {
+            put(cache, "b", indexWithRows(1));
+            assertNull(cache.get("a"));
+
+            // still usable by the evaluation which got it before the eviction
+            assertEquals(1, cached.speeches("Alexander Abel", Period.YEAR_2013));
+        }
+        assertEquals(indexBytes, admissionControl.getMetrics().getAdmittedBytes());
+    }
+
+    @Test
+    public void testAdmit_CachedIndexesReclaimed() {
+        long indexBytes = indexWithRows(1).getMemoryBytes();
+        AdmissionControl admissionControl = new AdmissionControl(3 * indexBytes, 0, 0, 5);
+        RollupCache cache = new RollupCache(1000, 1_000_000L, admissionControl);
+
+        put(cache, "a", indexWithRows(1));
+        put(cache, "b", indexWithRows(1));
+        put(cache, "c", indexWithRows(1));
+        assertEquals(3 * indexBytes, admissionControl.getMetrics().getAdmittedBytes());
+
+        // the evaluation gets the memory of the least recently used entries instead of being rejected
+        try (AdmissionControl.Permit permit = admissionControl.admit(2 * indexBytes)) {
+            assertEquals(1, cache.size());
+            assertEquals(3 * indexBytes, admissionControl.getMetrics().getAdmittedBytes());
+
+            // further indexes replace cached ones, the budget is not exceeded
+            put(cache, "d", indexWithRows(1));
+            assertEquals(1, cache.size());
+            assertNull(cache.get("c"));
+            assertEquals(3 * indexBytes, admissionControl.getMetrics().getAdmittedBytes());
+        }
+        assertEquals(indexBytes, admissionControl.getMetrics().getAdmittedBytes());
+        assertEquals(0, admissionControl.getMetrics().getRejectedRequests());
+    }
+}
@@ -2,9 +2,16 @@ package de.mkcode.speechprocessing.utils;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -40,6 +47,41 @@ public class CsvUtilsTest {
         assertEquals("URL '{}' is malformed", logsList.get(0).getMessage());
     }
 
+    @Test
+    public void testReadCsv_BrokenDownload() throws Exception {
+        // the server announces more bytes than it sends and closes the connection
+        byte[] response = ("HTTP/1.1 200 OK\r\nContent-Length: 10000\r\n\r\n"
+            + "Alexander Abel, Education Policy, 2012-10-30, 5310\n").getBytes(StandardCharsets.UTF_8);
+        try (ServerSocket server = new ServerSocket(0, 2, InetAddress.getLoopbackAddress())) {
+            Thread serverThread = new Thread(() -> {
+                for (int i = 0; i < 2; i++) {
+                    try (Socket socket = server.accept()) {
+                        socket.getOutputStream().write(response);
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            serverThread.start();
+
+            String url = "http://127.0.0.1:" + server.getLocalPort() + "/statistics.csv";
+            List<StatisticsRow> rows = new ArrayList<>();
+
+            assertThrows(IOException.class, () -> CsvUtils.readCsv(url, rows::add));
+            assertEquals(1, rows.size());
+
+            // the lenient variant keeps the rows read before the error
+            assertEquals(1, CsvUtils.readCsvFromUrl(url).size());
+            serverThread.join();
+        }
+    }
+
+    @Test
+    public void testReadCsv_MissingFile() {
+        File file = new File("src/test/resources/missing.csv");
+        assertThrows(IOException.class, () -> CsvUtils.readCsv("file://" + file.getAbsolutePath(), row -> { }));
+    }
+
     @Test
     public void testReadCsvFromUrl_SkippedHeader() {
         File file = new File("src/test/resources/test_statistics_withHeader.csv");